@@ -0,0 +1,56 @@
+package me.touchie771.ShellExecution;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent append throughput of {@link CommandHistory} and the cost of an indexed search on a
+ * full history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandHistoryBenchmark {
+
+    private CommandHistory history;
+
+    @Setup
+    public void setUp() throws Exception {
+        history = new CommandHistory(10_000, null);
+        for (int i = 0; i < 10_000; i++) {
+            history.addToCommandHistory("git commit -m change-" + i, i % 3, (long) i);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void addSingleThread() {
+        history.addToCommandHistory("ls -la /tmp", 0, 1L);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void addEightThreads() {
+        history.addToCommandHistory("ls -la /tmp", 0, 1L);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public CommandHistory.HistoryPage searchSubstring() {
+        return history.searchCommandHistory(null, " -m change-9", null, null, null, null, 0, 20);
+    }
+}
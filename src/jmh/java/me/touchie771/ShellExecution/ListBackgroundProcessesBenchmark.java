@@ -0,0 +1,51 @@
+package me.touchie771.ShellExecution;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of list-background-processes as the number of tracked processes grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListBackgroundProcessesBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int trackedProcesses;
+
+    private AsyncProcessManager manager;
+
+    @Setup
+    public void setUp() throws Exception {
+        manager = new AsyncProcessManager(new CommandHistory(10_000, null), new ProcessScheduler(32, 32, "fifo"), new ServerMetrics(""),
+                4096, 3600, trackedProcesses, 0, 0, 0, System.getProperty("java.io.tmpdir"), 5000, 600);
+        for (int i = 0; i < trackedProcesses; i++) {
+            manager.startCommandAsync(new String[]{"true"}, null, null);
+        }
+        // Let every process finish so each iteration lists the same, stable set
+        while (manager.listBackgroundProcesses(null, null).contains("Status: RUNNING")
+                || manager.listBackgroundProcesses(null, null).contains("Status: QUEUED")) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Benchmark
+    public String list() {
+        return manager.listBackgroundProcesses(null, null);
+    }
+}
@@ -0,0 +1,47 @@
+package me.touchie771.ShellExecution;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to run a command that prints {@code outputBytes} bytes and capture its output through
+ * {@link Terminal}, with the default 1 MB per-stream limit. Divide {@code outputBytes} by the score
+ * to get capture throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class OutputCaptureBenchmark {
+
+    @Param({"1024", "1048576", "104857600", "1073741824"})
+    public long outputBytes;
+
+    private Terminal terminal;
+    private String[] command;
+
+    @Setup
+    public void setUp() throws Exception {
+        terminal = new Terminal(new CommandHistory(1_000, null), new ProcessScheduler(1, 0, "fifo"), new ResultCache(false, "", 0, 1, "", false, 0), new ServerMetrics(""), 0, 1 << 20, 1 << 24, "tail");
+        command = new String[]{"head", "-c", Long.toString(outputBytes), "/dev/zero"};
+    }
+
+    @Benchmark
+    public long capture() {
+        ExecutionResult result = terminal.execute(command, 0, 1 << 20, OutputBuffer.Keep.TAIL);
+        return result.stdoutBytes();
+    }
+}
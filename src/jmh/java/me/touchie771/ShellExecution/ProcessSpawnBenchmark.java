@@ -0,0 +1,65 @@
+package me.touchie771.ShellExecution;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency from forking a command to reading the first byte of its stdout.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessSpawnBenchmark {
+
+    private static final String[] ECHO = {"echo", "x"};
+
+    @Benchmark
+    public int spawnToFirstByte() throws Exception {
+        Process process = Runtime.getRuntime().exec(ECHO);
+        try (InputStream stdout = process.getInputStream()) {
+            int first = stdout.read();
+            stdout.transferTo(OutputStreamSink.INSTANCE);
+            process.waitFor();
+            return first;
+        }
+    }
+
+    @Benchmark
+    public int spawnToFirstByteThroughOutputBuffer() throws Exception {
+        Process process = Runtime.getRuntime().exec(ECHO);
+        OutputBuffer stdout = new OutputBuffer(4096);
+        stdout.drainFrom(process.getInputStream(), "bench-stdout");
+        synchronized (stdout) {
+            while (stdout.end() == 0 && !stdout.isClosed()) {
+                stdout.wait();
+            }
+        }
+        process.waitFor();
+        return (int) stdout.end();
+    }
+
+    private static final class OutputStreamSink extends java.io.OutputStream {
+        static final OutputStreamSink INSTANCE = new OutputStreamSink();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
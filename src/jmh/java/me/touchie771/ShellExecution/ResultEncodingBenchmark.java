@@ -0,0 +1,68 @@
+package me.touchie771.ShellExecution;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.tool.execution.DefaultToolCallResultConverter;
+import org.springframework.ai.tool.execution.ToolCallResultConverter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of producing the list-background-processes response as the MCP layer sends it: the prose
+ * listing serialized as a JSON string (the previous behaviour), the same prose passed through raw,
+ * and the compact table. Payload sizes are printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultEncodingBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int trackedProcesses;
+
+    private AsyncProcessManager manager;
+    private final ToolCallResultConverter json = new DefaultToolCallResultConverter();
+    private final ToolCallResultConverter raw = new RawStringResultConverter();
+
+    @Setup
+    public void setUp() throws Exception {
+        manager = new AsyncProcessManager(new CommandHistory(10_000, null), new ProcessScheduler(32, 32, "fifo"), new ServerMetrics(""),
+                4096, 3600, trackedProcesses, 0, 0, 0, System.getProperty("java.io.tmpdir"), 5000, 600);
+        for (int i = 0; i < trackedProcesses; i++) {
+            manager.startCommandAsync(new String[]{"true"}, null, null);
+        }
+        while (manager.listBackgroundProcesses(false, null).contains("Status: RUNNING")
+                || manager.listBackgroundProcesses(false, null).contains("Status: QUEUED")) {
+            Thread.sleep(50);
+        }
+        System.out.printf("%n# payload bytes: proseJson=%d proseRaw=%d compact=%d%n",
+                proseAsJsonString().length(), proseRaw().length(), compact().length());
+    }
+
+    @Benchmark
+    public String proseAsJsonString() {
+        return json.convert(manager.listBackgroundProcesses(false, null), String.class);
+    }
+
+    @Benchmark
+    public String proseRaw() {
+        return raw.convert(manager.listBackgroundProcesses(false, null), String.class);
+    }
+
+    @Benchmark
+    public String compact() {
+        return raw.convert(manager.listBackgroundProcesses(true, null), String.class);
+    }
+}
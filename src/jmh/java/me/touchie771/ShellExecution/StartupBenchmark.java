@@ -0,0 +1,114 @@
+package me.touchie771.ShellExecution;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start as an MCP client sees it: from launching the server JVM to the response of its first
+ * tools/call over stdio. Every invocation starts a fresh server from the extracted jar that
+ * {@code ./gradlew cdsArchive} produces.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+
+    private static final String INITIALIZE = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\",\"params\":{\"protocolVersion\":\"2024-11-05\","
+            + "\"capabilities\":{},\"clientInfo\":{\"name\":\"startup-benchmark\",\"version\":\"1.0\"}}}";
+    private static final String INITIALIZED = "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"}";
+    private static final String FIRST_CALL = "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"tools/call\",\"params\":{\"name\":\"get-os\",\"arguments\":{}}}";
+
+    @Param({"default", "fast-start", "fast-start-cds"})
+    public String launch;
+
+    private Path appDirectory;
+    private List<String> command;
+
+    @Setup
+    public void setup() {
+        appDirectory = Path.of(System.getProperty("shell.benchmark.app-directory", "build/cds/app"));
+        String jar = System.getProperty("shell.benchmark.jar", "ShellExecution-0.0.1-SNAPSHOT.jar");
+        if (!Files.isRegularFile(appDirectory.resolve(jar))) {
+            throw new IllegalStateException("Server jar not found in " + appDirectory + "; run ./gradlew cdsArchive first");
+        }
+
+        command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (launch.endsWith("-cds")) {
+            Path archive = Path.of(System.getProperty("shell.benchmark.cds-archive", "build/cds/application.jsa"));
+            if (!Files.isRegularFile(archive)) {
+                throw new IllegalStateException("CDS archive not found: " + archive + "; run ./gradlew cdsArchive first");
+            }
+            command.add("-XX:SharedArchiveFile=" + archive.toAbsolutePath());
+        }
+        command.add("-jar");
+        command.add(jar);
+        command.add("--spring.ai.mcp.server.stdio=true");
+        command.add("--spring.main.web-application-type=none");
+        command.add("--spring.main.banner-mode=off");
+        command.add("--logging.pattern.console=");
+        if (launch.startsWith("fast-start")) {
+            command.add("--spring.profiles.active=fast-start");
+        }
+    }
+
+    @Benchmark
+    public String timeToFirstToolResponse() throws Exception {
+        Process process = new ProcessBuilder(command)
+                .directory(appDirectory.toFile())
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try (Writer stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+             BufferedReader stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            send(stdin, INITIALIZE);
+            awaitResponse(stdout, 1);
+            send(stdin, INITIALIZED);
+            send(stdin, FIRST_CALL);
+            return awaitResponse(stdout, 2);
+        } finally {
+            ProcessTrees.destroyForcibly(process);
+            process.waitFor();
+        }
+    }
+
+    private static void send(Writer stdin, String message) throws IOException {
+        stdin.write(message);
+        stdin.write('\n');
+        stdin.flush();
+    }
+
+    private static String awaitResponse(BufferedReader stdout, int id) throws IOException {
+        String marker = "\"id\":" + id;
+        String line;
+        while ((line = stdout.readLine()) != null) {
+            if (line.contains(marker)) {
+                return line;
+            }
+        }
+        throw new IllegalStateException("Server exited before answering request " + id);
+    }
+}
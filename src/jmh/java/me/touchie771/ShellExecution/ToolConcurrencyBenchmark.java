@@ -0,0 +1,87 @@
+package me.touchie771.ShellExecution;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches a burst of slow execute-command calls at once and measures how long the whole burst
+ * takes. "platform" runs each call on a fixed pool sized like Reactor's default bounded-elastic
+ * scheduler (10 threads per core), the way blocking tools ran before; "virtual" runs each call on
+ * its own virtual thread through {@link ManagedToolCallback}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ToolConcurrencyBenchmark {
+
+    private static final String SLOW_COMMAND = "{\"command\":[\"sleep\",\"0.1\"]}";
+
+    @Param({"platform", "virtual"})
+    public String dispatch;
+
+    @Param({"500"})
+    public int concurrentCalls;
+
+    private ExecutorService callers;
+    private ToolCallback executeCommand;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Terminal terminal = new Terminal(new CommandHistory(10_000, null), new ProcessScheduler(concurrentCalls, 0, "fifo"), new ResultCache(false, "", 0, 1, "", false, 0), new ServerMetrics(""), 0, 1 << 20, 1 << 24, "tail");
+        ToolCallback direct = Arrays.stream(ToolCallbacks.from(terminal))
+                .filter(callback -> callback.getToolDefinition().name().equals("execute-command"))
+                .findFirst()
+                .orElseThrow();
+        if ("virtual".equals(dispatch)) {
+            callers = Executors.newVirtualThreadPerTaskExecutor();
+            executeCommand = new ManagedToolCallback(direct, Executors.newVirtualThreadPerTaskExecutor(), Duration.ofMinutes(1), new ServerMetrics("").forTool("execute-command"));
+        } else {
+            callers = Executors.newFixedThreadPool(10 * Runtime.getRuntime().availableProcessors());
+            executeCommand = direct;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Benchmark
+    public int burst() throws Exception {
+        List<Future<String>> results = new ArrayList<>(concurrentCalls);
+        for (int i = 0; i < concurrentCalls; i++) {
+            results.add(callers.submit(() -> executeCommand.call(SLOW_COMMAND)));
+        }
+        int completed = 0;
+        for (Future<String> result : results) {
+            result.get();
+            completed++;
+        }
+        return completed;
+    }
+}
@@ -0,0 +1,62 @@
+package me.touchie771.ShellExecution;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of invoking a trivial tool through the MCP tool layer: the plain method call, the
+ * reflective {@link ToolCallbacks} callback (JSON in, JSON out), and the same callback wrapped in
+ * {@link ManagedToolCallback}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ToolDispatchBenchmark {
+
+    private OsInfo osInfo;
+    private ToolCallback callback;
+    private ToolCallback managed;
+
+    @Setup
+    public void setUp() {
+        osInfo = new OsInfo();
+        callback = Arrays.stream(ToolCallbacks.from(osInfo))
+                .filter(candidate -> candidate.getToolDefinition().name().equals("get-os"))
+                .findFirst()
+                .orElseThrow();
+        managed = new ManagedToolCallback(callback, Executors.newVirtualThreadPerTaskExecutor(), Duration.ofMinutes(1), new ServerMetrics("").forTool("get-os"));
+    }
+
+    @Benchmark
+    public String direct() {
+        return osInfo.getOs();
+    }
+
+    @Benchmark
+    public String toolCallback() {
+        return callback.call("{}");
+    }
+
+    @Benchmark
+    public String managedToolCallback() {
+        return managed.call("{}");
+    }
+}
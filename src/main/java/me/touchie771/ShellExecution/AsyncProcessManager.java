@@ -1,123 +1,447 @@
 package me.touchie771.ShellExecution;
 
+import jakarta.annotation.PreDestroy;
 import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 @Service
 public class AsyncProcessManager {
 
+    private static final int DEFAULT_READ_BYTES = 65536;
+    private static final long DEFAULT_WAIT_MILLIS = 30000;
+    // Time left after a capped wait to build the reply before the tool call itself is cancelled
+    private static final long WAIT_MARGIN_MILLIS = 2000;
+    private static final int DEFAULT_GREP_MATCHES = 100;
+    private static final int MAX_GREP_MATCHES = 1000;
+    private static final int MAX_GREP_CONTEXT = 100;
+    private static final int DEFAULT_TAIL_LINES = 20;
+
     private final Map<String, ProcessInfo> runningProcesses = new ConcurrentHashMap<>();
     private final CommandHistory commandHistory;
+    private final ProcessScheduler scheduler;
+    private final ServerMetrics metrics;
+    private final int outputBufferBytes;
+    private final OutputBuffer.Spill spill;
+    private final Duration stopGrace;
+    // Launches queued commands and runs stop escalations, off the threads that complete their futures
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final long finishedTtlMillis;
+    private final int maxFinishedProcesses;
+    private final long maxWaitMillis;
 
-    public AsyncProcessManager(CommandHistory commandHistory) {
+    public AsyncProcessManager(CommandHistory commandHistory, ProcessScheduler scheduler, ServerMetrics metrics,
+                               @Value("${shell.async.output-buffer-bytes:1048576}") int outputBufferBytes,
+                               @Value("${shell.async.finished-ttl-seconds:3600}") long finishedTtlSeconds,
+                               @Value("${shell.async.max-finished-processes:100}") int maxFinishedProcesses,
+                               @Value("${shell.async.spill-threshold-bytes:0}") long spillThresholdBytes,
+                               @Value("${shell.async.spill-max-bytes:134217728}") long spillMaxBytes,
+                               @Value("${shell.async.spill-budget-bytes:1073741824}") long spillBudgetBytes,
+                               @Value("${shell.async.spill-directory:${java.io.tmpdir}}") String spillDirectory,
+                               @Value("${shell.async.stop-grace-ms:5000}") long stopGraceMillis,
+                               @Value("${shell.tools.timeout-seconds.wait-for-commands:${shell.tools.timeout-seconds:600}}") long waitToolTimeoutSeconds) {
         this.commandHistory = commandHistory;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.outputBufferBytes = outputBufferBytes;
+        this.finishedTtlMillis = finishedTtlSeconds * 1000;
+        this.maxFinishedProcesses = maxFinishedProcesses;
+        this.spill = new OutputBuffer.Spill(Path.of(spillDirectory), spillThresholdBytes, spillMaxBytes, new AtomicLong(spillBudgetBytes));
+        this.stopGrace = Duration.ofMillis(stopGraceMillis);
+        long toolTimeoutMillis = waitToolTimeoutSeconds * 1000;
+        this.maxWaitMillis = toolTimeoutMillis - Math.min(WAIT_MARGIN_MILLIS, toolTimeoutMillis / 2);
     }
 
-    @Tool(name = "start-command-async", description = "Starts a command in background and returns a process ID for tracking. Every arg should be a different element of the array, for example: ['sleep', '60']")
-    public String startCommandAsync(String[] command) {
-        try {
-            String processId = UUID.randomUUID().toString();
-            Process process = Runtime.getRuntime().exec(command);
-            
-            ProcessInfo processInfo = new ProcessInfo(
+    @Tool(name = "start-command-async", description = "Starts a command in background and returns a process ID for tracking. Every arg should be a different element of the array, for example: ['sleep', '60']. " +
+            "If the server is already running its maximum number of processes, the command is queued and starts as soon as a slot frees up.")
+    public String startCommandAsync(String[] command,
+                                    @ToolParam(required = false, description = "Queue priority, higher starts first when the scheduler uses the priority policy (default 0)") Integer priority,
+                                    @ToolParam(required = false, description = "Labels for grouping related jobs, e.g. ['build', 'ci'], so they can be listed or stopped together") List<String> tags) {
+        String processId = UUID.randomUUID().toString();
+        ProcessInfo processInfo = new ProcessInfo(
+            processId,
+            String.join(" ", command),
+            normalizeTags(tags),
+            System.currentTimeMillis(),
+            new OutputBuffer(outputBufferBytes, OutputBuffer.Keep.TAIL, spill),
+            new OutputBuffer(outputBufferBytes, OutputBuffer.Keep.TAIL, spill)
+        );
+        // Publish only with its ticket set, so a concurrent stop or listing always has one
+        ProcessScheduler.Ticket ticket = scheduler.submitBackground(priority == null ? ProcessScheduler.DEFAULT_PRIORITY : priority);
+        processInfo.setTicket(ticket);
+        runningProcesses.put(processId, processInfo);
+        if (ticket.slot().isDone()) {
+            // Granted right away: launch on the caller's thread so a failure to start is reported now
+            launch(processInfo, command, ticket.slot().join());
+        } else {
+            // Otherwise on our own thread, not on whichever thread happened to release the slot
+            ticket.slot().thenAcceptAsync(slot -> launch(processInfo, command, slot), executor);
+        }
+
+        switch (processInfo.getStatus()) {
+            case FAILED:
+                runningProcesses.remove(processId);
+                return "Failed to start command: " + processInfo.getFailure();
+            case QUEUED:
+                return "Command queued (" + ticket.position() + " ahead in queue). Process ID: " + processId;
+            default:
+                return "Command started in background. Process ID: " + processId;
+        }
+    }
+
+    @Tool(name = "check-command-status", description = "Check the status of a background command. Returns status, runtime, and output if available.",
+            resultConverter = RawStringResultConverter.class)
+    public String checkCommandStatus(String processId,
+                                     @ToolParam(required = false, description = "Return a tab-separated header and row instead of prose, followed by the output (default false)") Boolean compact) {
+        ProcessInfo processInfo = runningProcesses.get(processId);
+        if (processInfo == null) {
+            return "Process not found: " + processId;
+        }
+        if (Boolean.TRUE.equals(compact)) {
+            StringBuilder result = CompactEncoder.appendTable(new StringBuilder(256), BackgroundProcess.class, List.of(describe(processInfo)));
+            if (processInfo.getProcess() != null && processInfo.isFinished()) {
+                result.append('\n').append(getProcessOutput(processInfo));
+            }
+            return result.toString();
+        }
+
+        Process process = processInfo.getProcess();
+        if (process == null) {
+            return describeNotStarted(processInfo);
+        }
+        // Status and exit code are set by the process exit callback, so no polling is needed here
+        ProcessStatus status = processInfo.getStatus();
+        if (status == ProcessStatus.RUNNING) {
+            return String.format(
+                "Process %s is RUNNING.\nCommand: %s\nStarted: %d seconds ago\nStatus: %s%s",
                 processId,
-                process,
-                String.join(" ", command),
-                System.currentTimeMillis(),
-                ProcessStatus.RUNNING
+                processInfo.getCommand(),
+                (System.currentTimeMillis() - processInfo.getStartTime()) / 1000,
+                status,
+                describeUsage(processInfo)
             );
-            
-            runningProcesses.put(processId, processInfo);
-            commandHistory.addToCommandHistory("[ASYNC] " + processInfo.getCommand());
-            
-            return "Command started in background. Process ID: " + processId;
-        } catch (Exception e) {
-            return "Failed to start command: " + e.getMessage();
         }
+
+        String output = getProcessOutput(processInfo);
+        return String.format(
+            "Process %s is %s.\nCommand: %s\nExit Code: %d\nDuration: %d seconds%s\nOutput:\n%s",
+            processId,
+            status,
+            processInfo.getCommand(),
+            processInfo.getExitCode(),
+            (processInfo.getEndTime() - processInfo.getStartTime()) / 1000,
+            describeUsage(processInfo),
+            output.isEmpty() ? "[No output]" : output
+        );
     }
 
-    @Tool(name = "check-command-status", description = "Check the status of a background command. Returns status, runtime, and output if available.")
-    public String checkCommandStatus(String processId) {
+    @Tool(name = "wait-for-commands", description = "Waits until background commands finish, instead of polling check-command-status. " +
+            "Returns as soon as any or all of the given processes have finished, or when the timeout passes, with the status of each.",
+            resultConverter = RawStringResultConverter.class)
+    public String waitForCommands(List<String> processIds,
+                                  @ToolParam(required = false, description = "Maximum time to wait in milliseconds (default 30000)") Long timeoutMs,
+                                  @ToolParam(required = false, description = "'any' returns when the first process finishes, 'all' when every process has (default 'all')") String mode,
+                                  @ToolParam(required = false, description = "Return a tab-separated table instead of prose (default false)") Boolean compact) {
+        boolean any;
+        if (mode == null || mode.isBlank() || mode.equalsIgnoreCase("all")) {
+            any = false;
+        } else if (mode.equalsIgnoreCase("any")) {
+            any = true;
+        } else {
+            return "Unknown mode '" + mode + "', expected 'any' or 'all'.";
+        }
+        List<ProcessInfo> tracked = new ArrayList<>();
+        List<String> unknown = new ArrayList<>();
+        for (String processId : processIds == null ? List.<String>of() : processIds) {
+            ProcessInfo processInfo = runningProcesses.get(processId);
+            if (processInfo == null) {
+                unknown.add(processId);
+            } else {
+                tracked.add(processInfo);
+            }
+        }
+
+        long requested = timeoutMs == null || timeoutMs < 0 ? DEFAULT_WAIT_MILLIS : timeoutMs;
+        // A wait outliving the tool call would be cancelled with nothing to show for it
+        long waitMillis = Math.min(requested, maxWaitMillis);
+        boolean timedOut = false;
+        if (!tracked.isEmpty()) {
+            // Completion futures are completed by each process's onExit callback, so nothing polls here
+            CompletableFuture<?>[] completions = tracked.stream().map(ProcessInfo::getCompletion).toArray(CompletableFuture[]::new);
+            CompletableFuture<?> done = any ? CompletableFuture.anyOf(completions) : CompletableFuture.allOf(completions);
+            try {
+                done.get(waitMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                timedOut = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "Interrupted while waiting for processes.";
+            } catch (ExecutionException e) {
+                // Completion futures are never completed exceptionally
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        long finished = tracked.stream().filter(ProcessInfo::isFinished).count();
+        StringBuilder result = new StringBuilder();
+        result.append("Finished: ").append(finished).append(" of ").append(tracked.size()).append("\n");
+        result.append("Timed out: ").append(timedOut).append("\n");
+        if (timedOut && waitMillis < requested) {
+            result.append("Waited ").append(waitMillis).append(" ms, the most the tool timeout allows; call again to keep waiting\n");
+        }
+        if (!unknown.isEmpty()) {
+            result.append("Not found: ").append(String.join(", ", unknown)).append("\n");
+        }
+        if (Boolean.TRUE.equals(compact)) {
+            List<BackgroundProcess> processes = new ArrayList<>(tracked.size());
+            for (ProcessInfo processInfo : tracked) {
+                processes.add(describe(processInfo));
+            }
+            return CompactEncoder.appendTable(result, BackgroundProcess.class, processes).toString();
+        }
+        result.append("===================\n");
+        for (ProcessInfo processInfo : tracked) {
+            result.append("ID: ").append(processInfo.getProcessId()).append("\n");
+            result.append("Command: ").append(processInfo.getCommand()).append("\n");
+            result.append("Status: ").append(processInfo.getStatus()).append("\n");
+            if (processInfo.getExitCode() != null) {
+                result.append("Exit Code: ").append(processInfo.getExitCode()).append("\n");
+            }
+            result.append("---\n");
+        }
+        return result.toString();
+    }
+
+    @Tool(name = "read-command-output", description = "Reads only the output a background command produced since the given cursor. " +
+            "Pass the 'Next Cursor' value from the previous call to continue; omit it to start from the beginning. " +
+            "Returns stdout and stderr separately, plus the next cursor.",
+            resultConverter = RawStringResultConverter.class)
+    public String readCommandOutput(String processId,
+                                    @ToolParam(required = false, description = "Cursor returned by the previous call, in the form 'stdoutOffset:stderrOffset'") String cursor,
+                                    @ToolParam(required = false, description = "Maximum bytes to return per stream (default 65536)") Integer maxBytes) {
         ProcessInfo processInfo = runningProcesses.get(processId);
         if (processInfo == null) {
             return "Process not found: " + processId;
         }
 
-        Process process = processInfo.getProcess();
+        long stdoutCursor = 0;
+        long stderrCursor = 0;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] parts = cursor.trim().split(":");
+            try {
+                stdoutCursor = Long.parseLong(parts[0]);
+                stderrCursor = parts.length > 1 ? Long.parseLong(parts[1]) : 0;
+            } catch (NumberFormatException e) {
+                return "Invalid cursor: " + cursor + ". Expected 'stdoutOffset:stderrOffset'.";
+            }
+        }
+        int limit = maxBytes == null || maxBytes <= 0 ? DEFAULT_READ_BYTES : maxBytes;
+
         ProcessStatus status = processInfo.getStatus();
-        
+        boolean alive = status == ProcessStatus.QUEUED || status == ProcessStatus.RUNNING;
+        String state = processInfo.getExitCode() == null
+                ? status.name()
+                : status + " (exit code " + processInfo.getExitCode() + ")";
+        OutputBuffer.Chunk stdout = processInfo.getStdout().read(stdoutCursor, limit);
+        OutputBuffer.Chunk stderr = processInfo.getStderr().read(stderrCursor, limit);
+        boolean complete = !alive
+                && processInfo.getStdout().isClosed() && stdout.end() == processInfo.getStdout().end()
+                && processInfo.getStderr().isClosed() && stderr.end() == processInfo.getStderr().end();
+
+        StringBuilder result = new StringBuilder();
+        result.append("Process ").append(processId).append(" is ").append(state).append(".\n");
+        result.append("Next Cursor: ").append(stdout.end()).append(":").append(stderr.end()).append("\n");
+        result.append("Complete: ").append(complete).append("\n");
+        appendChunk(result, "STDOUT", stdout);
+        appendChunk(result, "STDERR", stderr);
+        return result.toString();
+    }
+
+    @Tool(name = "grep-command-output", description = "Searches the output of a background command for lines matching a regular expression, without returning the rest of the output. " +
+            "Covers all output kept in memory or spilled to disk, including output already read. " +
+            "Matches are listed as 'lineNo:line', context lines as 'lineNo-line', and '--' separates groups.",
+            resultConverter = RawStringResultConverter.class)
+    public String grepCommandOutput(String processId,
+                                    @ToolParam(description = "Java regular expression; plain text is matched literally") String pattern,
+                                    @ToolParam(required = false, description = "Lines of context to show before and after each match (default 0)") Integer context,
+                                    @ToolParam(required = false, description = "Maximum number of matching lines to return (default 100, at most 1000)") Integer maxMatches,
+                                    @ToolParam(required = false, description = "Stream to search: 'stdout', 'stderr' or 'both' (default both)") String stream) {
+        ProcessInfo processInfo = runningProcesses.get(processId);
+        if (processInfo == null) {
+            return "Process not found: " + processId;
+        }
+        Pattern compiled;
         try {
-            if (process.isAlive()) {
-                status = ProcessStatus.RUNNING;
-                processInfo.setStatus(status);
-                return String.format(
-                    "Process %s is RUNNING.\nCommand: %s\nStarted: %d seconds ago\nStatus: %s",
-                    processId,
-                    processInfo.getCommand(),
-                    (System.currentTimeMillis() - processInfo.getStartTime()) / 1000,
-                    status
-                );
-            } else {
-                int exitCode = process.exitValue();
-                status = exitCode == 0 ? ProcessStatus.COMPLETED_SUCCESS : ProcessStatus.COMPLETED_ERROR;
-                processInfo.setStatus(status);
-                
-                String output = getProcessOutput(process);
-                return String.format(
-                    "Process %s is %s.\nCommand: %s\nExit Code: %d\nDuration: %d seconds\nOutput:\n%s",
-                    processId,
-                    status,
-                    processInfo.getCommand(),
-                    exitCode,
-                    (System.currentTimeMillis() - processInfo.getStartTime()) / 1000,
-                    output.isEmpty() ? "[No output]" : output
-                );
+            compiled = Pattern.compile(pattern);
+        } catch (PatternSyntaxException e) {
+            return "Invalid pattern: " + e.getDescription();
+        }
+        int lines = context == null || context < 0 ? 0 : Math.min(context, MAX_GREP_CONTEXT);
+        int limit = maxMatches == null || maxMatches <= 0 ? DEFAULT_GREP_MATCHES : Math.min(maxMatches, MAX_GREP_MATCHES);
+
+        StringBuilder result = new StringBuilder();
+        try {
+            for (Map.Entry<String, OutputBuffer> selected : selectStreams(processInfo, stream).entrySet()) {
+                StringBuilder matches = new StringBuilder();
+                int found = OutputScanner.grep(selected.getValue(), compiled, lines, limit, matches);
+                result.append(selected.getKey()).append(" (").append(found).append(found == limit ? "+ matches, limit reached" : " matches").append("):\n");
+                result.append(matches);
+            }
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        } catch (IOException e) {
+            return "Error reading output: " + e.getMessage();
+        }
+        return result.toString();
+    }
+
+    @Tool(name = "tail-command-output", description = "Returns the last lines of a background command's output, including output already read or spilled to disk.",
+            resultConverter = RawStringResultConverter.class)
+    public String tailCommandOutput(String processId,
+                                    @ToolParam(required = false, description = "Number of lines to return per stream (default 20)") Integer lines,
+                                    @ToolParam(required = false, description = "Stream to read: 'stdout', 'stderr' or 'both' (default both)") String stream) {
+        ProcessInfo processInfo = runningProcesses.get(processId);
+        if (processInfo == null) {
+            return "Process not found: " + processId;
+        }
+        int count = lines == null || lines <= 0 ? DEFAULT_TAIL_LINES : lines;
+
+        StringBuilder result = new StringBuilder();
+        try {
+            for (Map.Entry<String, OutputBuffer> selected : selectStreams(processInfo, stream).entrySet()) {
+                result.append(selected.getKey()).append(":\n");
+                OutputScanner.tail(selected.getValue(), count, result);
+                if (!result.isEmpty() && result.charAt(result.length() - 1) != '\n') {
+                    result.append('\n');
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        } catch (IOException e) {
+            return "Error reading output: " + e.getMessage();
+        }
+        return result.toString();
+    }
+
+    private static Map<String, OutputBuffer> selectStreams(ProcessInfo processInfo, String stream) {
+        String selected = stream == null || stream.isBlank() ? "both" : stream.trim().toLowerCase(Locale.ROOT);
+        Map<String, OutputBuffer> streams = new LinkedHashMap<>();
+        switch (selected) {
+            case "stdout" -> streams.put("STDOUT", processInfo.getStdout());
+            case "stderr" -> streams.put("STDERR", processInfo.getStderr());
+            case "both" -> {
+                streams.put("STDOUT", processInfo.getStdout());
+                streams.put("STDERR", processInfo.getStderr());
             }
-        } catch (IllegalThreadStateException e) {
-            processInfo.setStatus(ProcessStatus.RUNNING);
-            return "Process " + processId + " is still running. Status: " + status;
+            default -> throw new IllegalArgumentException("Invalid stream: " + stream + ". Expected 'stdout', 'stderr' or 'both'.");
         }
+        return streams;
     }
 
-    @Tool(name = "stop-command", description = "Stops a background command by its process ID")
+    @Tool(name = "stop-command", description = "Stops a background command and every process it started. " +
+            "Returns right away; processes that ignore the termination signal are killed after a grace period.")
     public String stopCommand(String processId) {
         ProcessInfo processInfo = runningProcesses.get(processId);
         if (processInfo == null) {
             return "Process not found: " + processId;
         }
+        return stop(processInfo);
+    }
+
+    @Tool(name = "stop-commands-by-tag", description = "Stops every queued or running background command that has the given tag, together with the processes they started")
+    public String stopCommandsByTag(String tag) {
+        if (tag == null || tag.isBlank()) {
+            return "A tag is required; use stop-command to stop a single process.";
+        }
+        // Tags are stored trimmed
+        tag = tag.trim();
+        StringBuilder result = new StringBuilder();
+        int matched = 0;
+        for (ProcessInfo processInfo : runningProcesses.values()) {
+            if (processInfo.getTags().contains(tag) && !processInfo.isFinished()) {
+                matched++;
+                result.append(stop(processInfo)).append("\n");
+            }
+        }
+        if (matched == 0) {
+            return "No queued or running processes with tag: " + tag;
+        }
+        return "Stopping " + matched + " process(es) tagged '" + tag + "':\n" + result;
+    }
 
+    private String stop(ProcessInfo processInfo) {
+        String processId = processInfo.getProcessId();
+        if (processInfo.getProcess() == null && processInfo.getTicket().cancel()) {
+            processInfo.cancelled();
+            return "Process " + processId + " was removed from the queue before it started.";
+        }
+        // Granted a slot but not launched yet: launch() checks the request under the same lock
+        synchronized (processInfo) {
+            if (processInfo.getProcess() == null && !processInfo.isFinished()) {
+                if (!processInfo.terminationRequested()) {
+                    return "Process " + processId + " is already being stopped.";
+                }
+                return "Process " + processId + " was stopped before it started.";
+            }
+        }
         Process process = processInfo.getProcess();
+        if (process == null) {
+            return "Process " + processId + " is not running. Status: " + processInfo.getStatus();
+        }
         if (!process.isAlive()) {
             return "Process " + processId + " is already terminated.";
         }
-
-        try {
-            process.destroy();
-            boolean terminated = process.waitFor(5, java.util.concurrent.TimeUnit.SECONDS);
-            
-            if (!terminated) {
-                process.destroyForcibly();
-                process.waitFor(5, java.util.concurrent.TimeUnit.SECONDS);
-            }
-            
-            processInfo.setStatus(ProcessStatus.TERMINATED);
-            return "Process " + processId + " has been stopped.";
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return "Failed to stop process " + processId + ": " + e.getMessage();
-        } catch (Exception e) {
-            return "Error stopping process " + processId + ": " + e.getMessage();
+        if (!processInfo.terminationRequested()) {
+            return "Process " + processId + " is already being stopped.";
         }
+
+        // Signal the whole tree: child processes such as build daemons would otherwise outlive the command
+        ProcessTrees.terminate(process, stopGrace, executor).whenComplete((killed, error) -> processInfo.stopped(
+                error != null ? "failed: " + error.getMessage()
+                        : killed == 0 ? "exited after SIGTERM"
+                        : "killed " + killed + " process(es) still running after " + stopGrace.toMillis() + " ms"));
+        return "Stopping process " + processId + ": sent SIGTERM to it and its child processes; any still running after "
+                + stopGrace.toMillis() + " ms will be killed.";
     }
 
-    @Tool(name = "list-background-processes", description = "Lists all background processes with their status")
-    public String listBackgroundProcesses() {
+    @Tool(name = "list-background-processes", description = "Lists all background processes with their status",
+            resultConverter = RawStringResultConverter.class)
+    public String listBackgroundProcesses(@ToolParam(required = false, description = "Return a tab-separated table with one row per process instead of prose (default false)") Boolean compact,
+                                          @ToolParam(required = false, description = "Only list processes with this tag") String tag) {
+        tag = tag == null || tag.isBlank() ? null : tag.trim();
+        if (Boolean.TRUE.equals(compact)) {
+            List<BackgroundProcess> processes = new ArrayList<>(runningProcesses.size());
+            for (ProcessInfo processInfo : runningProcesses.values()) {
+                if (tag == null || processInfo.getTags().contains(tag)) {
+                    processes.add(describe(processInfo));
+                }
+            }
+            return CompactEncoder.appendTable(new StringBuilder(64 + processes.size() * 160), BackgroundProcess.class, processes).toString();
+        }
         if (runningProcesses.isEmpty()) {
             return "No background processes are currently tracked.";
         }
@@ -129,20 +453,38 @@ public class AsyncProcessManager {
         for (Map.Entry<String, ProcessInfo> entry : runningProcesses.entrySet()) {
             String processId = entry.getKey();
             ProcessInfo processInfo = entry.getValue();
+            if (tag != null && !processInfo.getTags().contains(tag)) {
+                continue;
+            }
             
             result.append("ID: ").append(processId).append("\n");
             result.append("Command: ").append(processInfo.getCommand()).append("\n");
+            if (!processInfo.getTags().isEmpty()) {
+                result.append("Tags: ").append(String.join(", ", processInfo.getTags())).append("\n");
+            }
             result.append("Status: ").append(processInfo.getStatus()).append("\n");
+            if (processInfo.getStopOutcome() != null) {
+                result.append("Stop: ").append(processInfo.getStopOutcome()).append("\n");
+            }
+
+            if (processInfo.getProcess() == null) {
+                if (processInfo.getStatus() == ProcessStatus.QUEUED) {
+                    long queued = (System.currentTimeMillis() - processInfo.getSubmitTime()) / 1000;
+                    result.append("Queued: ").append(queued).append(" seconds\n");
+                }
+                result.append("---\n");
+                continue;
+            }
             
-            long runtime = (System.currentTimeMillis() - processInfo.getStartTime()) / 1000;
+            long endTime = processInfo.getEndTime() > 0 ? processInfo.getEndTime() : System.currentTimeMillis();
+            long runtime = (endTime - processInfo.getStartTime()) / 1000;
             result.append("Runtime: ").append(runtime).append(" seconds\n");
             
-            if (!processInfo.getProcess().isAlive()) {
-                try {
-                    result.append("Exit Code: ").append(processInfo.getProcess().exitValue()).append("\n");
-                } catch (IllegalThreadStateException e) {
-                    result.append("Exit Code: N/A\n");
-                }
+            if (processInfo.getExitCode() != null) {
+                result.append("Exit Code: ").append(processInfo.getExitCode()).append("\n");
+            }
+            if (processInfo.getUsage().isSampled()) {
+                result.append("Resources: ").append(processInfo.getUsage().describe()).append("\n");
             }
             
             result.append("---\n");
@@ -151,60 +493,309 @@ public class AsyncProcessManager {
         return result.toString();
     }
 
-    private String getProcessOutput(Process process) {
-        StringBuilder output = new StringBuilder();
-        
-        try (BufferedReader stdoutReader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = stdoutReader.readLine()) != null) {
-                output.append(line).append("\n");
+    private void launch(ProcessInfo processInfo, String[] command, ProcessScheduler.Slot slot) {
+        Process process;
+        synchronized (processInfo) {
+            if (processInfo.isStopRequested()) {
+                // Stopped while its slot was being handed over
+                slot.release();
+                processInfo.cancelled();
+                return;
             }
-        } catch (Exception e) {
-            output.append("Error reading stdout: ").append(e.getMessage()).append("\n");
+            long spawnStart = System.nanoTime();
+            try {
+                process = Runtime.getRuntime().exec(command);
+            } catch (IOException | RuntimeException e) {
+                metrics.recordSpawnFailure();
+                slot.release();
+                processInfo.failed(e.getMessage());
+                return;
+            }
+            metrics.recordSpawn(System.nanoTime() - spawnStart);
+            processInfo.started(process, System.currentTimeMillis());
         }
-        
-        try (BufferedReader stderrReader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
-            String line;
-            boolean hasStderr = false;
-            StringBuilder stderr = new StringBuilder();
-            while ((line = stderrReader.readLine()) != null) {
-                stderr.append(line).append("\n");
-                hasStderr = true;
+        // Track the exit before anything else can fail: from here on the child is live and the slot is its
+        process.onExit().whenComplete((exited, error) -> {
+            processInfo.completed(process.exitValue(), System.currentTimeMillis());
+            slot.release();
+            metrics.recordCapturedBytes(processInfo.getStdout().end() + processInfo.getStderr().end());
+        });
+        try {
+            // Drain both pipes right away so the child never blocks on a full pipe buffer
+            processInfo.getStdout().drainFrom(process.getInputStream(), "stdout-" + processInfo.getProcessId());
+            processInfo.getStderr().drainFrom(process.getErrorStream(), "stderr-" + processInfo.getProcessId());
+            commandHistory.addToCommandHistory("[ASYNC] " + processInfo.getCommand());
+        } catch (RuntimeException e) {
+            // Don't leave a child running that nothing reads from; the exit callback records the outcome
+            processInfo.terminationRequested();
+            ProcessTrees.destroyForcibly(process);
+        }
+    }
+
+    /**
+     * Drops finished processes that outlived the TTL, then the oldest finished ones beyond the
+     * configured maximum. Running and queued processes are never evicted.
+     */
+    @Scheduled(fixedDelayString = "${shell.async.reaper-interval-ms:10000}")
+    public void reapFinishedProcesses() {
+        long now = System.currentTimeMillis();
+        runningProcesses.values().removeIf(info -> {
+            boolean expired = info.isFinished() && now - info.getEndTime() > finishedTtlMillis;
+            if (expired) {
+                info.release();
             }
-            if (hasStderr) {
-                output.append("STDERR:\n").append(stderr.toString());
+            return expired;
+        });
+
+        List<ProcessInfo> finished = runningProcesses.values().stream()
+                .filter(ProcessInfo::isFinished)
+                .sorted(Comparator.comparingLong(ProcessInfo::getEndTime))
+                .toList();
+        for (int i = 0; i < finished.size() - maxFinishedProcesses; i++) {
+            ProcessInfo info = finished.get(i);
+            if (runningProcesses.remove(info.getProcessId(), info)) {
+                info.release();
             }
-        } catch (Exception e) {
-            output.append("Error reading stderr: ").append(e.getMessage()).append("\n");
         }
-        
+    }
+
+    /** Deletes spilled output files on shutdown and launches no more queued commands; running processes are left to the OS. */
+    @PreDestroy
+    public void releaseAll() {
+        executor.shutdownNow();
+        runningProcesses.values().forEach(ProcessInfo::release);
+    }
+
+    /**
+     * Samples CPU time, memory and I/O of every running process tree in one pass. Finished processes
+     * keep the values from their last sample.
+     */
+    @Scheduled(fixedDelayString = "${shell.async.usage-interval-ms:2000}")
+    public void sampleResourceUsage() {
+        for (ProcessInfo info : runningProcesses.values()) {
+            Process process = info.getProcess();
+            if (process != null && process.isAlive()) {
+                info.getUsage().sample(process.toHandle());
+            }
+        }
+    }
+
+    private static List<String> normalizeTags(List<String> tags) {
+        if (tags == null) {
+            return List.of();
+        }
+        return tags.stream()
+                .filter(tag -> tag != null && !tag.isBlank())
+                .map(String::trim)
+                .distinct()
+                .toList();
+    }
+
+    private BackgroundProcess describe(ProcessInfo processInfo) {
+        long now = System.currentTimeMillis();
+        Long queuedSeconds = null;
+        Long runtimeSeconds = null;
+        if (processInfo.getProcess() != null) {
+            long endTime = processInfo.getEndTime() > 0 ? processInfo.getEndTime() : now;
+            runtimeSeconds = (endTime - processInfo.getStartTime()) / 1000;
+        } else if (processInfo.getStatus() == ProcessStatus.QUEUED) {
+            queuedSeconds = (now - processInfo.getSubmitTime()) / 1000;
+        }
+        ProcessUsage usage = processInfo.getUsage();
+        boolean sampled = usage.isSampled();
+        return new BackgroundProcess(processInfo.getProcessId(), processInfo.getCommand(),
+                processInfo.getTags().isEmpty() ? null : String.join(",", processInfo.getTags()), processInfo.getStatus().name(),
+                queuedSeconds, runtimeSeconds, processInfo.getExitCode(),
+                sampled ? usage.cpuMillis() : null,
+                sampled ? knownOrNull(usage.rssBytes()) : null,
+                sampled ? knownOrNull(usage.peakRssBytes()) : null,
+                sampled ? knownOrNull(usage.readBytes()) : null,
+                sampled ? knownOrNull(usage.writeBytes()) : null);
+    }
+
+    private static Long knownOrNull(long value) {
+        return value < 0 ? null : value;
+    }
+
+    private String describeUsage(ProcessInfo processInfo) {
+        ProcessUsage usage = processInfo.getUsage();
+        return usage.isSampled() ? "\nResources: " + usage.describe() : "";
+    }
+
+    private String describeNotStarted(ProcessInfo processInfo) {
+        switch (processInfo.getStatus()) {
+            case QUEUED:
+                return String.format(
+                    "Process %s is QUEUED.\nCommand: %s\nQueued: %d seconds ago\nAhead in queue: %d",
+                    processInfo.getProcessId(),
+                    processInfo.getCommand(),
+                    (System.currentTimeMillis() - processInfo.getSubmitTime()) / 1000,
+                    processInfo.getTicket().position()
+                );
+            case FAILED:
+                return "Process " + processInfo.getProcessId() + " failed to start: " + processInfo.getFailure();
+            default:
+                return "Process " + processInfo.getProcessId() + " was cancelled before it started.";
+        }
+    }
+
+    private String getProcessOutput(ProcessInfo processInfo) {
+        StringBuilder output = new StringBuilder();
+        try {
+            // The process has exited; give the drainers a moment to reach EOF on both pipes
+            processInfo.getStdout().awaitClosed(1000);
+            processInfo.getStderr().awaitClosed(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        appendStream(output, processInfo.getStdout());
+        if (processInfo.getStderr().end() > 0) {
+            output.append("STDERR:\n");
+            appendStream(output, processInfo.getStderr());
+        }
         return output.toString();
     }
 
+    private void appendStream(StringBuilder output, OutputBuffer buffer) {
+        long dropped = buffer.droppedBytes();
+        if (dropped > 0) {
+            output.append("[").append(dropped).append(" earlier bytes dropped]\n");
+        }
+        output.append(buffer.contents());
+    }
+
+    private void appendChunk(StringBuilder result, String label, OutputBuffer.Chunk chunk) {
+        result.append(label).append(" (bytes ").append(chunk.start()).append("-").append(chunk.end()).append("):\n");
+        if (chunk.skipped() > 0) {
+            result.append("[").append(chunk.skipped()).append(" bytes dropped before this chunk]\n");
+        }
+        result.append(chunk.text());
+        if (chunk.bytes().length > 0 && chunk.bytes()[chunk.bytes().length - 1] != '\n') {
+            result.append("\n");
+        }
+    }
+
     private static class ProcessInfo {
-        private final Process process;
+        private final String processId;
         private final String command;
-        private final long startTime;
-        private ProcessStatus status;
+        private final List<String> tags;
+        private final long submitTime;
+        private final OutputBuffer stdout;
+        private final OutputBuffer stderr;
+        private volatile ProcessScheduler.Ticket ticket;
+        private volatile Process process;
+        private volatile long startTime;
+        private volatile ProcessStatus status = ProcessStatus.QUEUED;
+        private volatile String failure;
+        private volatile Integer exitCode;
+        private volatile long endTime;
+        private final AtomicBoolean terminationRequested = new AtomicBoolean();
+        private volatile String stopOutcome;
+        private final ProcessUsage usage = new ProcessUsage();
+        private final CompletableFuture<ProcessInfo> completion = new CompletableFuture<>();
 
-        public ProcessInfo(String processId, Process process, String command, long startTime, ProcessStatus status) {
-            this.process = process;
+        public ProcessInfo(String processId, String command, List<String> tags, long submitTime, OutputBuffer stdout, OutputBuffer stderr) {
+            this.processId = processId;
             this.command = command;
+            this.tags = tags;
+            this.submitTime = submitTime;
+            this.stdout = stdout;
+            this.stderr = stderr;
+        }
+
+        public void started(Process process, long startTime) {
             this.startTime = startTime;
-            this.status = status;
+            this.process = process;
+            this.status = ProcessStatus.RUNNING;
+        }
+
+        public void completed(int exitCode, long endTime) {
+            this.exitCode = exitCode;
+            this.endTime = endTime;
+            if (terminationRequested.get()) {
+                this.status = ProcessStatus.TERMINATED;
+            } else {
+                this.status = exitCode == 0 ? ProcessStatus.COMPLETED_SUCCESS : ProcessStatus.COMPLETED_ERROR;
+            }
+            completion.complete(this);
+        }
+
+        public void failed(String failure) {
+            this.failure = failure;
+            this.endTime = System.currentTimeMillis();
+            this.status = ProcessStatus.FAILED;
+            stdout.close();
+            stderr.close();
+            completion.complete(this);
+        }
+
+        public void cancelled() {
+            this.endTime = System.currentTimeMillis();
+            this.status = ProcessStatus.TERMINATED;
+            stdout.close();
+            stderr.close();
+            completion.complete(this);
+        }
+
+        /** Returns false if a stop was already requested. */
+        public boolean terminationRequested() {
+            return terminationRequested.compareAndSet(false, true);
+        }
+
+        public boolean isStopRequested() {
+            return terminationRequested.get();
+        }
+
+        public void stopped(String outcome) {
+            this.stopOutcome = outcome;
+        }
+
+        public boolean isFinished() {
+            return completion.isDone();
+        }
+
+        /** Closes the remaining pipe to the child and deletes spilled output, freeing both with this entry. */
+        public void release() {
+            stdout.discardSpill();
+            stderr.discardSpill();
+            Process process = this.process;
+            if (process != null) {
+                try {
+                    process.getOutputStream().close();
+                    process.getInputStream().close();
+                    process.getErrorStream().close();
+                } catch (IOException ignored) {
+                    // Nothing left to release
+                }
+            }
         }
 
+        public String getProcessId() { return processId; }
         public Process getProcess() { return process; }
         public String getCommand() { return command; }
+        public List<String> getTags() { return tags; }
+        public String getStopOutcome() { return stopOutcome; }
+        public long getSubmitTime() { return submitTime; }
         public long getStartTime() { return startTime; }
+        public OutputBuffer getStdout() { return stdout; }
+        public OutputBuffer getStderr() { return stderr; }
+        public ProcessScheduler.Ticket getTicket() { return ticket; }
+        public void setTicket(ProcessScheduler.Ticket ticket) { this.ticket = ticket; }
         public ProcessStatus getStatus() { return status; }
-        public void setStatus(ProcessStatus status) { this.status = status; }
+        public String getFailure() { return failure; }
+        public Integer getExitCode() { return exitCode; }
+        public long getEndTime() { return endTime; }
+        public CompletableFuture<ProcessInfo> getCompletion() { return completion; }
+        public ProcessUsage getUsage() { return usage; }
     }
 
     private enum ProcessStatus {
+        QUEUED,
         RUNNING,
         COMPLETED_SUCCESS,
         COMPLETED_ERROR,
-        TERMINATED
+        TERMINATED,
+        FAILED
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,10 @@
+package me.touchie771.ShellExecution;
+
+/**
+ * Snapshot of one tracked background process. Times are in whole seconds; resource fields are null
+ * until the process was sampled, or when the platform does not report them. Tags are comma-separated.
+ */
+public record BackgroundProcess(String processId, String command, String tags, String status,
+                                Long queuedSeconds, Long runtimeSeconds, Integer exitCode,
+                                Long cpuMillis, Long rssBytes, Long peakRssBytes, Long readBytes, Long writeBytes) {
+}
@@ -0,0 +1,14 @@
+package me.touchie771.ShellExecution;
+
+/**
+ * Compact outcome of one command of a batch. {@code droppedBytes} counts stdout and stderr bytes left
+ * out because they exceeded the per-command limit; {@code exitCode} is null when the command did not run.
+ */
+public record BatchResult(String command, Integer exitCode, boolean timedOut, long durationMillis,
+                          String stdout, String stderr, long droppedBytes) {
+
+    static BatchResult of(String[] command, ExecutionResult result) {
+        return new BatchResult(String.join(" ", command), result.exitCode(), result.timedOut(), result.durationMillis(),
+                result.stdout(), result.stderr(), result.stdoutDropped() + result.stderrDropped());
+    }
+}
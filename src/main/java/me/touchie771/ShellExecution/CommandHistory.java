@@ -1,26 +1,163 @@
 package me.touchie771.ShellExecution;
 
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 @Service
 public class CommandHistory {
 
-    private final List<String> commandHistory = new ArrayList<>();
+    private static final Logger log = LoggerFactory.getLogger(CommandHistory.class);
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    // Fixed-size ring indexed by sequence number; appends claim a sequence and overwrite the oldest slot
+    private final AtomicReferenceArray<HistoryEntry> slots;
+    private final int capacity;
+    private final AtomicLong nextSequence = new AtomicLong();
+    // Entries below this sequence were cleared and are no longer visible
+    private final AtomicLong firstSequence = new AtomicLong();
+    private final LongAdder evictedEntries = new LongAdder();
+    private final HistoryIndex index;
+    // Optional persistent journal; null unless shell.history.journal.enabled is set
+    private final HistoryJournal journal;
+
+    @Autowired
+    public CommandHistory(@Value("${shell.history.capacity:10000}") int capacity,
+                          @Value("${shell.history.journal.enabled:false}") boolean journalEnabled,
+                          @Value("${shell.history.journal.directory:${user.home}/.shell-execution/history}") String journalDirectory,
+                          @Value("${shell.history.journal.segment-bytes:8388608}") int journalSegmentBytes,
+                          @Value("${shell.history.journal.max-segments:64}") int journalMaxSegments) throws IOException {
+        this(capacity, journalEnabled ? new HistoryJournal(Path.of(journalDirectory), journalSegmentBytes, journalMaxSegments) : null);
+    }
+
+    CommandHistory(int capacity, HistoryJournal journal) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("History capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.index = new HistoryIndex(capacity);
+        this.journal = journal;
+        if (journal != null) {
+            for (HistoryEntry entry : journal.readTail(capacity)) {
+                append(entry.command(), entry.timestamp(), entry.exitCode(), entry.durationMillis());
+            }
+        }
+    }
 
     @Tool(name = "clear-command-history", description = "Clears the command history")
     public void clearCommandHistory() {
-        commandHistory.clear();
+        clearMemory();
+        if (journal != null) {
+            try {
+                journal.reset();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not reset history journal", e);
+            }
+        }
+    }
+
+    @Tool(name = "get-command-history", description = "Gets the command history, oldest first, with timestamp, exit code and duration of each command")
+    public List<HistoryEntry> getCommandHistory() {
+        return snapshot();
+    }
+
+    @Tool(name = "get-command-history-page", description = "Gets one page of the command history, newest first. " +
+            "Use offset and limit to page through long histories instead of fetching everything at once.")
+    public HistoryPage getCommandHistoryPage(@ToolParam(required = false, description = "Entries to skip, newest first (default 0)") Integer offset,
+                                             @ToolParam(required = false, description = "Maximum entries to return (default 50, at most 1000)") Integer limit) {
+        return searchCommandHistory(null, null, null, null, null, null, offset, limit);
+    }
+
+    @Tool(name = "search-command-history", description = "Searches the command history, newest first. All filters are optional and combined with AND: " +
+            "command prefix, substring or regex, a timestamp range in epoch milliseconds, and an exit code. Use offset and limit to page through matches.")
+    public HistoryPage searchCommandHistory(@ToolParam(required = false, description = "Command starts with this text") String prefix,
+                                            @ToolParam(required = false, description = "Command contains this text") String substring,
+                                            @ToolParam(required = false, description = "Java regular expression the command must contain a match of") String regex,
+                                            @ToolParam(required = false, description = "Earliest timestamp, epoch milliseconds, inclusive") Long fromTimestamp,
+                                            @ToolParam(required = false, description = "Latest timestamp, epoch milliseconds, inclusive") Long toTimestamp,
+                                            @ToolParam(required = false, description = "Only commands that finished with this exit code") Integer exitCode,
+                                            @ToolParam(required = false, description = "Matches to skip, newest first (default 0)") Integer offset,
+                                            @ToolParam(required = false, description = "Maximum matches to return (default 50, at most 1000)") Integer limit) {
+        Pattern pattern;
+        try {
+            pattern = regex == null || regex.isEmpty() ? null : Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid regex: " + e.getMessage(), e);
+        }
+        int skip = offset == null ? 0 : Math.max(0, offset);
+        int pageSize = limit == null || limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        String prefixFilter = prefix == null || prefix.isEmpty() ? null : prefix;
+        String substringFilter = substring == null || substring.isEmpty() ? null : substring;
+
+        long end = nextSequence.get();
+        long begin = Math.max(firstSequence.get(), end - capacity);
+        long[] candidates = indexedCandidates(prefixFilter, substringFilter, exitCode);
+        int remaining = candidates == null ? (int) (end - begin) : candidates.length;
+
+        List<HistoryEntry> matches = new ArrayList<>(Math.min(pageSize, remaining));
+        boolean hasMore = false;
+        for (int i = 1; i <= remaining; i++) {
+            long sequence = candidates == null ? end - i : candidates[candidates.length - i];
+            if (sequence < begin) {
+                break;
+            }
+            HistoryEntry entry = slots.get(slot(sequence));
+            if (entry == null || entry.sequence() != sequence) {
+                continue;
+            }
+            if (fromTimestamp != null && entry.timestamp() < fromTimestamp) {
+                // Entries are appended in time order, so everything older is out of range too
+                break;
+            }
+            if ((toTimestamp != null && entry.timestamp() > toTimestamp)
+                    || (exitCode != null && !exitCode.equals(entry.exitCode()))
+                    || (prefixFilter != null && !entry.command().startsWith(prefixFilter))
+                    || (substringFilter != null && !entry.command().contains(substringFilter))
+                    || (pattern != null && !pattern.matcher(entry.command()).find())) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+            } else if (matches.size() < pageSize) {
+                matches.add(entry);
+            } else {
+                hasMore = true;
+                break;
+            }
+        }
+        return new HistoryPage(matches, offset == null ? 0 : Math.max(0, offset), hasMore);
     }
 
-    @Tool(name = "get-command-history", description = "Gets the command history")
-    public List<String> getCommandHistory() {
-        return commandHistory;
+    @Tool(name = "get-command-history-stats", description = "Gets command history capacity, current size and how many entries were evicted")
+    public Map<String, Object> getCommandHistoryStats() {
+        long appended = nextSequence.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("capacity", capacity);
+        stats.put("size", appended - Math.max(firstSequence.get(), appended - capacity));
+        stats.put("totalAppended", appended);
+        stats.put("evicted", evictedEntries.sum());
+        return stats;
     }
 
     @Tool(name = "save-to-file", description = "Saves current command history to a file. Set overwrite=true to replace an existing file.")
@@ -38,12 +175,13 @@ public class CommandHistory {
                 }
             }
             // If overwrite is true, FileOutputStream without append will truncate the file; if false and file doesn't exist, it will create it.
+            List<HistoryEntry> entries = snapshot();
             try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, false), StandardCharsets.UTF_8))) {
-                for (String command : commandHistory) {
-                    writer.write(command);
+                for (HistoryEntry entry : entries) {
+                    writer.write(entry.command());
                     writer.newLine();
                 }
-                return "History saved successfully" + (overwrite && file.exists() ? " (overwritten)" : "") + ". Saved " + commandHistory.size() + " commands.";
+                return "History saved successfully" + (overwrite && file.exists() ? " (overwritten)" : "") + ". Saved " + entries.size() + " commands.";
             }
         } catch (Exception e) {
             return "Error saving history: " + e.getMessage();
@@ -57,14 +195,18 @@ public class CommandHistory {
             return "File doesn't exist!";
         }
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
-            commandHistory.clear();
+            // The journal keeps what it has; the imported commands are appended to it like new ones
+            clearMemory();
+            int loaded = 0;
             String line;
             while ((line = reader.readLine()) != null) {
                 if (!line.trim().isEmpty()) {
-                    commandHistory.add(line);
+                    addToCommandHistory(line);
+                    loaded++;
                 }
             }
-            return "History loaded successfully! Loaded " + commandHistory.size() + " commands.";
+            return "History loaded successfully! Loaded " + loaded + " commands"
+                    + (loaded > capacity ? " (kept the latest " + capacity + ")." : ".");
         } catch (Exception e) {
             return "Error loading history: " + e.getMessage();
         }
@@ -73,6 +215,127 @@ public class CommandHistory {
     // Helper methods
 
     public void addToCommandHistory(String command) {
-        commandHistory.add(command);
+        addToCommandHistory(command, null, null);
+    }
+
+    public void addToCommandHistory(String command, Integer exitCode, Long durationMillis) {
+        HistoryEntry entry = append(command, System.currentTimeMillis(), exitCode, durationMillis);
+        if (journal != null) {
+            try {
+                journal.append(entry);
+            } catch (RuntimeException e) {
+                // History is a side effect of running commands; a journal problem must not fail them
+                log.warn("Could not write command to the history journal", e);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${shell.history.journal.fsync-interval-ms:1000}")
+    public void flushJournal() {
+        if (journal != null) {
+            journal.flush();
+        }
+    }
+
+    @PreDestroy
+    public void closeJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private void clearMemory() {
+        firstSequence.set(nextSequence.get());
+        index.clear();
+    }
+
+    private HistoryEntry append(String command, long timestamp, Integer exitCode, Long durationMillis) {
+        long sequence = nextSequence.getAndIncrement();
+        if (sequence - capacity >= firstSequence.get()) {
+            evictedEntries.increment();
+        }
+        HistoryEntry entry = new HistoryEntry(sequence, command, timestamp, exitCode, durationMillis);
+        slots.set(slot(sequence), entry);
+        index.add(entry);
+        return entry;
+    }
+
+    private List<HistoryEntry> snapshot() {
+        long end = nextSequence.get();
+        long begin = Math.max(firstSequence.get(), end - capacity);
+        List<HistoryEntry> entries = new ArrayList<>((int) Math.max(0, end - begin));
+        for (long sequence = begin; sequence < end; sequence++) {
+            HistoryEntry entry = slots.get(slot(sequence));
+            // Skip slots whose writer has claimed a sequence but not published the entry yet
+            if (entry != null && entry.sequence() == sequence) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Picks the shortest posting list the index can offer for the given filters, or null when no
+     * filter can be answered from the index and the whole ring has to be scanned.
+     */
+    private long[] indexedCandidates(String prefix, String substring, Integer exitCode) {
+        long[] best = null;
+        if (exitCode != null) {
+            best = index.withExitCode(exitCode);
+        }
+        if (prefix != null && HistoryIndex.isTokenChar(prefix.charAt(0))) {
+            int tokenEnd = tokenEnd(prefix, 0);
+            String token = prefix.substring(0, tokenEnd);
+            best = shorter(best, tokenEnd < prefix.length() ? index.withToken(token) : index.withTokenPrefix(token));
+        }
+        if (substring != null) {
+            // Only tokens with a delimiter before them are whole tokens of the command (or token prefixes)
+            String exact = null;
+            String partial = null;
+            for (int start = 0; start < substring.length(); start++) {
+                if (!HistoryIndex.isTokenChar(substring.charAt(start))) {
+                    continue;
+                }
+                int tokenEnd = tokenEnd(substring, start);
+                if (start > 0) {
+                    String token = substring.substring(start, tokenEnd);
+                    if (tokenEnd < substring.length()) {
+                        exact = exact == null || token.length() > exact.length() ? token : exact;
+                    } else {
+                        partial = token;
+                    }
+                }
+                start = tokenEnd;
+            }
+            if (exact != null) {
+                best = shorter(best, index.withToken(exact));
+            } else if (partial != null) {
+                best = shorter(best, index.withTokenPrefix(partial));
+            }
+        }
+        return best;
+    }
+
+    private static int tokenEnd(String text, int start) {
+        int end = start;
+        while (end < text.length() && HistoryIndex.isTokenChar(text.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static long[] shorter(long[] current, long[] candidate) {
+        return current == null || candidate.length < current.length ? candidate : current;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    /**
+     * One page of history results, newest first. {@code hasMore} tells whether another page exists
+     * at {@code offset + entries.size()}.
+     */
+    public record HistoryPage(List<HistoryEntry> entries, int offset, boolean hasMore) {
     }
-}
\ No newline at end of file
+}
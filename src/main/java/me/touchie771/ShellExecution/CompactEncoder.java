@@ -0,0 +1,97 @@
+package me.touchie771.ShellExecution;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.RecordComponent;
+import java.util.Collection;
+
+/**
+ * Writes records as a compact tab-separated table: one header line with the component names, then
+ * one line per record. Nulls are written as empty fields; tabs, newlines and backslashes inside
+ * values are escaped as {@code \t}, {@code \n} and {@code \\}. Everything is appended to the
+ * caller's buffer, so no intermediate Strings are built for numbers or field values.
+ */
+final class CompactEncoder {
+
+    private static final ClassValue<Layout> LAYOUTS = new ClassValue<>() {
+        @Override
+        protected Layout computeValue(Class<?> type) {
+            RecordComponent[] components = type.getRecordComponents();
+            String[] names = new String[components.length];
+            MethodHandle[] accessors = new MethodHandle[components.length];
+            try {
+                for (int i = 0; i < components.length; i++) {
+                    names[i] = components[i].getName();
+                    accessors[i] = MethodHandles.lookup().unreflect(components[i].getAccessor());
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Record " + type.getName() + " is not accessible", e);
+            }
+            return new Layout(names, accessors);
+        }
+    };
+
+    private CompactEncoder() {
+    }
+
+    static <R extends Record> StringBuilder appendTable(StringBuilder out, Class<R> type, Collection<R> rows) {
+        Layout layout = LAYOUTS.get(type);
+        for (int i = 0; i < layout.names().length; i++) {
+            if (i > 0) {
+                out.append('\t');
+            }
+            out.append(layout.names()[i]);
+        }
+        out.append('\n');
+        for (R row : rows) {
+            appendRow(out, layout, row);
+        }
+        return out;
+    }
+
+    private static void appendRow(StringBuilder out, Layout layout, Record row) {
+        MethodHandle[] accessors = layout.accessors();
+        for (int i = 0; i < accessors.length; i++) {
+            if (i > 0) {
+                out.append('\t');
+            }
+            Object value;
+            try {
+                value = accessors[i].invoke(row);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Could not read " + layout.names()[i], e);
+            }
+            appendValue(out, value);
+        }
+        out.append('\n');
+    }
+
+    private static void appendValue(StringBuilder out, Object value) {
+        switch (value) {
+            case null -> {
+            }
+            case Long number -> out.append(number.longValue());
+            case Integer number -> out.append(number.intValue());
+            case Boolean flag -> out.append(flag.booleanValue());
+            case Enum<?> constant -> out.append(constant.name());
+            case CharSequence text -> appendEscaped(out, text);
+            default -> appendEscaped(out, value.toString());
+        }
+    }
+
+    private static void appendEscaped(StringBuilder out, CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\t' -> out.append("\\t");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\\' -> out.append("\\\\");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    private record Layout(String[] names, MethodHandle[] accessors) {
+    }
+}
@@ -1,15 +1,40 @@
 package me.touchie771.ShellExecution;
 
 import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 @Service
 public class EnvironmentTools {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    // The process environment can't change after startup, so it is sorted once
+    private final SortedMap<String, String> environment = Collections.unmodifiableSortedMap(new TreeMap<>(System.getenv()));
+    private final int maxSnapshots;
+
+    // Guarded by this: the last properties copy and the stored snapshots
+    private SortedMap<String, String> properties;
+    private long nextSnapshotId = 1;
+    private final LinkedHashMap<Long, SortedMap<String, String>> snapshots = new LinkedHashMap<>();
+
+    public EnvironmentTools(@Value("${shell.environment.max-snapshots:16}") int maxSnapshots) {
+        this.maxSnapshots = Math.max(1, maxSnapshots);
+    }
+
     @Tool(name = "get-environment-variable", description = "Get a specific environment variable by name")
     public String getEnvironmentVariable(String variableName) {
         if (variableName == null || variableName.trim().isEmpty()) {
@@ -20,7 +45,15 @@ public class EnvironmentTools {
 
     @Tool(name = "get-all-environment-variables", description = "Get all environment variables as a map")
     public Map<String, String> getAllEnvironmentVariables() {
-        return System.getenv();
+        return environment;
+    }
+
+    @Tool(name = "search-environment-variables", description = "Search environment variables by name prefix or regex, sorted by name, one page at a time")
+    public EntryPage searchEnvironmentVariables(@ToolParam(required = false, description = "Variable name starts with this text") String prefix,
+                                                @ToolParam(required = false, description = "Java regular expression the variable name must contain a match of") String regex,
+                                                @ToolParam(required = false, description = "Matching entries to skip (default 0)") Integer offset,
+                                                @ToolParam(required = false, description = "Maximum entries to return (default 100, at most 1000)") Integer limit) {
+        return page(environment, prefix, regex, offset, limit);
     }
 
     @Tool(name = "get-system-property", description = "Get a specific system property by name")
@@ -33,11 +66,118 @@ public class EnvironmentTools {
 
     @Tool(name = "get-all-system-properties", description = "Get all system properties as a map")
     public Map<String, String> getAllSystemProperties() {
+        return currentProperties();
+    }
+
+    @Tool(name = "search-system-properties", description = "Search system properties by name prefix or regex, sorted by name, one page at a time")
+    public EntryPage searchSystemProperties(@ToolParam(required = false, description = "Property name starts with this text") String prefix,
+                                            @ToolParam(required = false, description = "Java regular expression the property name must contain a match of") String regex,
+                                            @ToolParam(required = false, description = "Matching entries to skip (default 0)") Integer offset,
+                                            @ToolParam(required = false, description = "Maximum entries to return (default 100, at most 1000)") Integer limit) {
+        return page(currentProperties(), prefix, regex, offset, limit);
+    }
+
+    @Tool(name = "snapshot-system-properties", description = "Records the current system properties and returns a snapshot ID to pass to diff-system-properties later")
+    public synchronized String snapshotSystemProperties() {
+        long snapshotId = nextSnapshotId++;
+        snapshots.put(snapshotId, currentProperties());
+        while (snapshots.size() > maxSnapshots) {
+            snapshots.pollFirstEntry();
+        }
+        return "Snapshot ID: " + snapshotId;
+    }
+
+    @Tool(name = "diff-system-properties", description = "Lists system properties added, removed or changed since a snapshot taken with snapshot-system-properties")
+    public synchronized PropertyDiff diffSystemProperties(long snapshotId) {
+        SortedMap<String, String> before = snapshots.get(snapshotId);
+        if (before == null) {
+            throw new IllegalArgumentException("Snapshot not found: " + snapshotId + " (only the last " + maxSnapshots + " snapshots are kept)");
+        }
+        SortedMap<String, String> after = currentProperties();
+        Map<String, String> added = new TreeMap<>();
+        Map<String, Change> changed = new TreeMap<>();
+        List<String> removed = new ArrayList<>();
+        if (before != after) {
+            for (Map.Entry<String, String> entry : after.entrySet()) {
+                String previous = before.get(entry.getKey());
+                if (previous == null) {
+                    added.put(entry.getKey(), entry.getValue());
+                } else if (!previous.equals(entry.getValue())) {
+                    changed.put(entry.getKey(), new Change(previous, entry.getValue()));
+                }
+            }
+            for (String name : before.keySet()) {
+                if (!after.containsKey(name)) {
+                    removed.add(name);
+                }
+            }
+        }
+        return new PropertyDiff(snapshotId, added, removed, changed);
+    }
+
+    /**
+     * Sorted, immutable copy of the system properties. The copy is reused while its contents still
+     * match, so repeated calls don't allocate anything while nothing was set. Anything may call
+     * {@link System#setProperty}, so the contents are compared rather than tracking changes.
+     */
+    private synchronized SortedMap<String, String> currentProperties() {
         Properties props = System.getProperties();
-        Map<String, String> propMap = new HashMap<>();
-        for (String name : props.stringPropertyNames()) {
-            propMap.put(name, props.getProperty(name));
+        if (properties == null || !matches(properties, props)) {
+            SortedMap<String, String> copy = new TreeMap<>();
+            for (String name : props.stringPropertyNames()) {
+                copy.put(name, props.getProperty(name));
+            }
+            properties = Collections.unmodifiableSortedMap(copy);
+        }
+        return properties;
+    }
+
+    private static boolean matches(SortedMap<String, String> copy, Properties props) {
+        int count = 0;
+        for (Map.Entry<Object, Object> entry : props.entrySet()) {
+            if (entry.getKey() instanceof String name && entry.getValue() instanceof String value) {
+                if (!value.equals(copy.get(name))) {
+                    return false;
+                }
+                count++;
+            }
+        }
+        return count == copy.size();
+    }
+
+    private static EntryPage page(SortedMap<String, String> source, String prefix, String regex, Integer offset, Integer limit) {
+        Pattern pattern;
+        try {
+            pattern = regex == null || regex.isEmpty() ? null : Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid regex: " + e.getMessage(), e);
         }
-        return propMap;
+        int skip = offset == null ? 0 : Math.max(0, offset);
+        int pageSize = limit == null || limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        // Names sharing a prefix are contiguous in the sorted map
+        SortedMap<String, String> candidates = prefix == null || prefix.isEmpty()
+                ? source
+                : source.subMap(prefix, prefix + Character.MAX_VALUE);
+
+        Map<String, String> entries = new LinkedHashMap<>();
+        int matched = 0;
+        for (Map.Entry<String, String> entry : candidates.entrySet()) {
+            if (pattern != null && !pattern.matcher(entry.getKey()).find()) {
+                continue;
+            }
+            if (matched++ >= skip && entries.size() < pageSize) {
+                entries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return new EntryPage(entries, skip, matched, skip + entries.size() < matched);
+    }
+
+    public record EntryPage(Map<String, String> entries, int offset, int total, boolean hasMore) {
+    }
+
+    public record Change(String before, String after) {
+    }
+
+    public record PropertyDiff(long snapshotId, Map<String, String> added, List<String> removed, Map<String, Change> changed) {
     }
 }
@@ -0,0 +1,12 @@
+package me.touchie771.ShellExecution;
+
+/**
+ * Outcome of a bounded command execution. {@code stdoutBytes}/{@code stderrBytes} count everything
+ * the command printed; {@code stdoutDropped}/{@code stderrDropped} count the bytes left out of the
+ * returned text because they exceeded the output limit. {@code exitCode} is null when the command
+ * did not run.
+ */
+public record ExecutionResult(Integer exitCode, boolean timedOut, long durationMillis,
+                              String stdout, long stdoutBytes, long stdoutDropped,
+                              String stderr, long stderrBytes, long stderrDropped) {
+}
@@ -0,0 +1,8 @@
+package me.touchie771.ShellExecution;
+
+/**
+ * A single command history record. {@code exitCode} and {@code durationMillis} are null when
+ * they are not known, e.g. for background commands or entries loaded from a file.
+ */
+public record HistoryEntry(long sequence, String command, long timestamp, Integer exitCode, Long durationMillis) {
+}
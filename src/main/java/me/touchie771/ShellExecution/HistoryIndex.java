@@ -0,0 +1,182 @@
+package me.touchie771.ShellExecution;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Inverted index over the command history ring: maps each command token and each exit code to the
+ * sorted sequence numbers of the entries containing it. The index tracks exactly the entries held by
+ * the ring, so an append that overwrites a slot also removes the evicted entry's postings.
+ */
+class HistoryIndex {
+
+    private final NavigableMap<String, Postings> tokens = new TreeMap<>();
+    private final Map<Integer, Postings> exitCodes = new HashMap<>();
+    // Per ring slot: the indexed sequence and what it was indexed under, so it can be evicted later
+    private final long[] slotSequence;
+    private final String[][] slotTokens;
+    private final Integer[] slotExitCode;
+
+    HistoryIndex(int capacity) {
+        this.slotSequence = new long[capacity];
+        this.slotTokens = new String[capacity][];
+        this.slotExitCode = new Integer[capacity];
+        Arrays.fill(slotSequence, -1);
+    }
+
+    synchronized void add(HistoryEntry entry) {
+        int slot = (int) (entry.sequence() % slotSequence.length);
+        if (slotSequence[slot] > entry.sequence()) {
+            // A newer entry already took over this slot; this one is evicted already
+            return;
+        }
+        if (slotSequence[slot] >= 0) {
+            evict(slot);
+        }
+        String[] entryTokens = tokenize(entry.command());
+        for (String token : entryTokens) {
+            tokens.computeIfAbsent(token, t -> new Postings()).add(entry.sequence());
+        }
+        if (entry.exitCode() != null) {
+            exitCodes.computeIfAbsent(entry.exitCode(), c -> new Postings()).add(entry.sequence());
+        }
+        slotSequence[slot] = entry.sequence();
+        slotTokens[slot] = entryTokens;
+        slotExitCode[slot] = entry.exitCode();
+    }
+
+    synchronized void clear() {
+        tokens.clear();
+        exitCodes.clear();
+        Arrays.fill(slotSequence, -1);
+        Arrays.fill(slotTokens, null);
+        Arrays.fill(slotExitCode, null);
+    }
+
+    /** Sequences of entries containing {@code token} as a whole token, oldest first. */
+    synchronized long[] withToken(String token) {
+        Postings postings = tokens.get(token);
+        return postings == null ? new long[0] : postings.toArray();
+    }
+
+    /** Sequences of entries containing a token that starts with {@code prefix}, oldest first. */
+    synchronized long[] withTokenPrefix(String prefix) {
+        long[] merged = new long[0];
+        for (Postings postings : tokens.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            merged = union(merged, postings.toArray());
+        }
+        return merged;
+    }
+
+    synchronized long[] withExitCode(int exitCode) {
+        Postings postings = exitCodes.get(exitCode);
+        return postings == null ? new long[0] : postings.toArray();
+    }
+
+    static boolean isTokenChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+    }
+
+    /** Splits a command into its distinct runs of token characters. */
+    static String[] tokenize(String command) {
+        Set<String> result = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= command.length(); i++) {
+            boolean tokenChar = i < command.length() && isTokenChar(command.charAt(i));
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                result.add(command.substring(start, i));
+                start = -1;
+            }
+        }
+        return result.toArray(String[]::new);
+    }
+
+    private void evict(int slot) {
+        long sequence = slotSequence[slot];
+        for (String token : slotTokens[slot]) {
+            Postings postings = tokens.get(token);
+            if (postings != null && postings.remove(sequence) && postings.isEmpty()) {
+                tokens.remove(token);
+            }
+        }
+        Integer exitCode = slotExitCode[slot];
+        if (exitCode != null) {
+            Postings postings = exitCodes.get(exitCode);
+            if (postings != null && postings.remove(sequence) && postings.isEmpty()) {
+                exitCodes.remove(exitCode);
+            }
+        }
+    }
+
+    private static long[] union(long[] a, long[] b) {
+        long[] result = new long[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            long next = j >= b.length || (i < a.length && a[i] <= b[j]) ? a[i++] : b[j++];
+            if (n == 0 || result[n - 1] != next) {
+                result[n++] = next;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Sorted list of sequence numbers. Appends and evictions nearly always happen at the ends
+     * (sequences grow, the oldest is evicted first), so both are O(1) in the common case.
+     */
+    private static final class Postings {
+        private long[] values = new long[4];
+        private int head;
+        private int size;
+
+        void add(long sequence) {
+            if (head + size == values.length) {
+                if (size < values.length / 2) {
+                    System.arraycopy(values, head, values, 0, size);
+                } else {
+                    values = Arrays.copyOfRange(values, head, head + Math.max(4, size * 2));
+                }
+                head = 0;
+            }
+            int end = head + size;
+            int insertAt = end;
+            // Concurrent appends may be indexed slightly out of order; keep the list sorted
+            while (insertAt > head && values[insertAt - 1] > sequence) {
+                insertAt--;
+            }
+            System.arraycopy(values, insertAt, values, insertAt + 1, end - insertAt);
+            values[insertAt] = sequence;
+            size++;
+        }
+
+        boolean remove(long sequence) {
+            if (size > 0 && values[head] == sequence) {
+                head++;
+                size--;
+                return true;
+            }
+            int index = Arrays.binarySearch(values, head, head + size, sequence);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, head + size - index - 1);
+            size--;
+            return true;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOfRange(values, head, head + size);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package me.touchie771.ShellExecution;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only command history log made of fixed-size, memory-mapped segment files.
+ * <p>
+ * Each segment starts with a magic number followed by records of a length, a CRC32C of the payload
+ * and the payload. The length is written last, so a zero length marks the end of written data, and
+ * a record cut short by a crash fails its checksum: reading stops there and later appends overwrite
+ * it. Appends go straight into the mapped tail segment and are forced to disk in batches by
+ * {@link #flush()}. When the tail is full a new segment is started and the oldest segments beyond
+ * {@code maxSegments} are deleted.
+ */
+class HistoryJournal implements AutoCloseable {
+
+    private static final int MAGIC = 0x53484A32; // "SHJ2"
+    private static final int HEADER_BYTES = Integer.BYTES;
+    // length and checksum, covering the payload that follows them
+    private static final int RECORD_HEADER = Integer.BYTES + Integer.BYTES;
+    // record header, then the payload: timestamp, exit code, duration, command
+    private static final int RECORD_OVERHEAD = RECORD_HEADER + Long.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int NO_EXIT_CODE = Integer.MIN_VALUE;
+    private static final String SEGMENT_PREFIX = "history-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final Deque<Path> segments = new ArrayDeque<>();
+
+    private FileChannel channel;
+    private MappedByteBuffer tail;
+    private long tailIndex;
+    private boolean dirty;
+    private boolean closed;
+
+    HistoryJournal(Path directory, int segmentBytes, int maxSegments) throws IOException {
+        if (segmentBytes <= HEADER_BYTES + RECORD_OVERHEAD) {
+            throw new IllegalArgumentException("Journal segment size is too small: " + segmentBytes);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(1, maxSegments);
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(HistoryJournal::isSegment).sorted().forEach(segments::add);
+        }
+        if (segments.isEmpty()) {
+            openSegment(0);
+        } else {
+            Path last = segments.peekLast();
+            tailIndex = segmentIndex(last);
+            mapTail(last);
+            int end = endOfRecords(tail);
+            // Wipe what is left of a torn record, so the records appended over it stay readable
+            if (end + Integer.BYTES <= tail.limit() && tail.getInt(end) != 0) {
+                for (int i = end; i < tail.limit(); i++) {
+                    tail.put(i, (byte) 0);
+                }
+            }
+            tail.position(end);
+        }
+    }
+
+    /**
+     * Reads the newest {@code maxEntries} records, oldest first. Segments are scanned from the tail
+     * backwards and scanning stops as soon as enough records were found, so startup cost depends on
+     * the history capacity rather than on the size of the journal.
+     */
+    synchronized List<HistoryEntry> readTail(int maxEntries) throws IOException {
+        Deque<List<HistoryEntry>> chunks = new ArrayDeque<>();
+        int found = 0;
+        for (var it = segments.descendingIterator(); it.hasNext() && found < maxEntries; ) {
+            Path segment = it.next();
+            List<HistoryEntry> records = segment.equals(segments.peekLast()) && tail != null
+                    ? readRecords(tail.duplicate())
+                    : readSegment(segment);
+            chunks.addFirst(records);
+            found += records.size();
+        }
+        List<HistoryEntry> entries = new ArrayList<>(Math.min(found, maxEntries));
+        int skip = Math.max(0, found - maxEntries);
+        for (List<HistoryEntry> chunk : chunks) {
+            for (HistoryEntry entry : chunk) {
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Appends one record. If the tail segment could not be closed or opened earlier, a new segment is
+     * opened first; if that fails as well the journal disables itself and the error is thrown once.
+     */
+    synchronized void append(HistoryEntry entry) {
+        if (closed) {
+            return;
+        }
+        byte[] command = entry.command().getBytes(StandardCharsets.UTF_8);
+        int maxCommandBytes = segmentBytes - HEADER_BYTES - RECORD_OVERHEAD;
+        int commandLength = Math.min(command.length, maxCommandBytes);
+        int recordLength = RECORD_OVERHEAD + commandLength;
+        try {
+            if (tail == null) {
+                openSegment(tailIndex + 1);
+            } else if (tail.remaining() < recordLength) {
+                rollover();
+            }
+        } catch (IOException e) {
+            closed = true;
+            throw new UncheckedIOException("History journal " + directory + " disabled after a write error", e);
+        }
+        int start = tail.position();
+        int payloadLength = recordLength - RECORD_HEADER;
+        tail.position(start + RECORD_HEADER);
+        tail.putLong(entry.timestamp());
+        tail.putInt(entry.exitCode() == null ? NO_EXIT_CODE : entry.exitCode());
+        tail.putLong(entry.durationMillis() == null ? -1 : entry.durationMillis());
+        tail.put(command, 0, commandLength);
+        tail.putInt(start + Integer.BYTES, checksum(tail, start + RECORD_HEADER, payloadLength));
+        // The length commits the record
+        tail.putInt(start, payloadLength);
+        dirty = true;
+    }
+
+    /**
+     * Forces appended records to disk; called periodically so appends never wait for fsync. Only the
+     * tail is picked up under the lock. If the segment rolls over or the journal closes meanwhile, the
+     * old mapping stays valid, and closing the segment has already forced it.
+     */
+    void flush() {
+        MappedByteBuffer flushing;
+        synchronized (this) {
+            if (!dirty || closed || tail == null) {
+                return;
+            }
+            flushing = tail;
+            // Appends from here on mark the journal dirty again for the next flush
+            dirty = false;
+        }
+        try {
+            flushing.force();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                // Still unforced: try again next time unless the segment was closed, which forces it
+                dirty |= tail == flushing;
+            }
+            throw e;
+        }
+    }
+
+    /** Drops every record and starts over with a single empty segment. */
+    synchronized void reset() throws IOException {
+        closeTail(false);
+        for (Path segment : segments) {
+            Files.deleteIfExists(segment);
+        }
+        segments.clear();
+        openSegment(tailIndex + 1);
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closeTail(true);
+            closed = true;
+        }
+    }
+
+    private void rollover() throws IOException {
+        closeTail(true);
+        openSegment(tailIndex + 1);
+        while (segments.size() > maxSegments) {
+            Files.deleteIfExists(segments.pollFirst());
+        }
+    }
+
+    private void openSegment(long index) throws IOException {
+        tailIndex = index;
+        Path segment = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        mapTail(segment);
+        tail.putInt(MAGIC);
+        segments.addLast(segment);
+        dirty = true;
+    }
+
+    private void mapTail(Path segment) throws IOException {
+        FileChannel opened = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean existing = opened.size() >= HEADER_BYTES;
+            MappedByteBuffer mapped = opened.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            if (existing && mapped.getInt(0) != MAGIC) {
+                throw new IOException("Not a history journal segment: " + segment);
+            }
+            channel = opened;
+            tail = mapped;
+        } catch (IOException | RuntimeException e) {
+            opened.close();
+            throw e;
+        }
+    }
+
+    private void closeTail(boolean trim) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        FileChannel closing = channel;
+        try (closing) {
+            tail.force();
+            if (trim) {
+                try {
+                    // Give back the unused, zero-filled part of the segment
+                    closing.truncate(tail.position());
+                } catch (IOException e) {
+                    // Not possible while the file is mapped on some platforms; the zeros read as end of data
+                }
+            }
+        } finally {
+            // Even if trimming failed the segment is done; the next append starts a new one
+            tail = null;
+            channel = null;
+            dirty = false;
+        }
+    }
+
+    private List<HistoryEntry> readSegment(Path segment) throws IOException {
+        try (FileChannel readChannel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            return readRecords(readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size()));
+        }
+    }
+
+    private static List<HistoryEntry> readRecords(ByteBuffer buffer) {
+        List<HistoryEntry> records = new ArrayList<>();
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            return records;
+        }
+        int end = endOfRecords(buffer);
+        buffer.position(HEADER_BYTES);
+        while (buffer.position() < end) {
+            int length = buffer.getInt();
+            buffer.getInt();
+            long timestamp = buffer.getLong();
+            int exitCode = buffer.getInt();
+            long duration = buffer.getLong();
+            byte[] command = new byte[length - (RECORD_OVERHEAD - RECORD_HEADER)];
+            buffer.get(command);
+            records.add(new HistoryEntry(-1, new String(command, StandardCharsets.UTF_8), timestamp,
+                    exitCode == NO_EXIT_CODE ? null : exitCode, duration < 0 ? null : duration));
+        }
+        return records;
+    }
+
+    /** Offset just past the last intact record: the first empty, truncated or corrupt record ends the segment. */
+    private static int endOfRecords(ByteBuffer buffer) {
+        int position = HEADER_BYTES;
+        while (position + RECORD_HEADER <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            int payload = position + RECORD_HEADER;
+            if (length < RECORD_OVERHEAD - RECORD_HEADER || length > buffer.limit() - payload
+                    || buffer.getInt(position + Integer.BYTES) != checksum(buffer, payload, length)) {
+                break;
+            }
+            position = payload + length;
+        }
+        return position;
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long segmentIndex(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,84 @@
+package me.touchie771.ShellExecution;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs a tool on a virtual thread with a deadline. When the deadline passes the call is cancelled by
+ * interrupting its thread, which blocking tools such as {@link Terminal} treat as a request to kill
+ * the command they are waiting on. Every call's latency and outcome is recorded in the tool's metrics.
+ */
+public class ManagedToolCallback implements ToolCallback {
+
+    private final ToolCallback delegate;
+    private final ExecutorService executor;
+    private final Duration timeout;
+    private final ServerMetrics.ToolMetrics metrics;
+
+    public ManagedToolCallback(ToolCallback delegate, ExecutorService executor, Duration timeout, ServerMetrics.ToolMetrics metrics) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.timeout = timeout;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return run(() -> delegate.call(toolInput));
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        return run(() -> delegate.call(toolInput, toolContext));
+    }
+
+    private String run(Callable<String> call) {
+        long startNanos = System.nanoTime();
+        boolean failed = true;
+        boolean timedOut = false;
+        Future<String> future = executor.submit(call);
+        try {
+            String result = future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            failed = false;
+            return result;
+        } catch (TimeoutException e) {
+            timedOut = true;
+            future.cancel(true);
+            throw new ToolExecutionException(getToolDefinition(), new TimeoutException(
+                    "Tool " + getToolDefinition().name() + " timed out after " + timeout.toMillis() + " ms and was cancelled"));
+        } catch (InterruptedException e) {
+            // The caller gave up on this request; stop the work as well
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ToolExecutionException(getToolDefinition(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new ToolExecutionException(getToolDefinition(), e.getCause());
+        } finally {
+            metrics.recordCall(startNanos, failed, timedOut);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package me.touchie771.ShellExecution;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-capacity buffer for a process stream. By default it is a ring holding the most recent bytes;
+ * in {@link Keep#HEAD} mode it keeps the first bytes and discards the rest instead.
+ * Offsets are absolute positions in the stream, so memory stays bounded while callers
+ * can still tell how many bytes were produced and how many were dropped. The backing array
+ * grows with the stream up to the capacity, so short output only costs what it uses.
+ * <p>
+ * A ring buffer can also spill: once the stream reaches the spill threshold, everything written so
+ * far and from then on is appended to a temp file as well, up to a size limit and a disk budget
+ * shared by all buffers, so the complete output stays searchable on disk.
+ */
+class OutputBuffer {
+
+    /** Which end of the stream survives once it outgrows the buffer. */
+    enum Keep {
+        HEAD,
+        TAIL
+    }
+
+    /**
+     * Where and when a ring buffer copies its stream to disk; a threshold of zero or less disables spilling.
+     * {@code budget} holds the bytes all spill files sharing it may still use together.
+     */
+    record Spill(Path directory, long threshold, long maxBytes, AtomicLong budget) {
+    }
+
+    private static final int READ_CHUNK_SIZE = 8192;
+    private static final int INITIAL_SIZE = 8192;
+
+    private final int capacity;
+    private byte[] data = new byte[0];
+    private final Keep keep;
+    private final Spill spill;
+    private long written;
+    private boolean closed;
+    // Spill file state; the file holds stream bytes [0, spilled)
+    private Path spillPath;
+    private FileChannel spillChannel;
+    private long spilled;
+    private boolean spillStopped;
+
+    OutputBuffer(int capacity) {
+        this(capacity, Keep.TAIL);
+    }
+
+    OutputBuffer(int capacity, Keep keep) {
+        this(capacity, keep, null);
+    }
+
+    OutputBuffer(int capacity, Keep keep, Spill spill) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Output buffer capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.keep = keep;
+        // Spilling must start before the ring drops anything, so the file begins at offset 0
+        this.spill = spill == null || spill.threshold() <= 0 || keep != Keep.TAIL
+                ? null
+                : new Spill(spill.directory(), Math.min(spill.threshold(), capacity), spill.maxBytes(), spill.budget());
+    }
+
+    /**
+     * Starts a virtual thread that copies {@code in} into this buffer until EOF, then closes the buffer.
+     */
+    Thread drainFrom(InputStream in, String threadName) {
+        return Thread.ofVirtual().name(threadName).start(() -> {
+            byte[] chunk = new byte[READ_CHUNK_SIZE];
+            try (in) {
+                int read;
+                while ((read = in.read(chunk)) != -1) {
+                    write(chunk, 0, read);
+                }
+            } catch (IOException ignored) {
+                // Stream closed underneath us (process destroyed); keep what was captured.
+            } finally {
+                close();
+            }
+        });
+    }
+
+    synchronized void write(byte[] src, int offset, int length) {
+        if (keep == Keep.HEAD) {
+            int room = (int) Math.max(0, capacity - written);
+            if (room > 0) {
+                grow(written + Math.min(room, length));
+                System.arraycopy(src, offset, data, (int) written, Math.min(room, length));
+            }
+            written += length;
+            notifyAll();
+            return;
+        }
+        spill(src, offset, length);
+        if (length > capacity) {
+            int skip = length - capacity;
+            offset += skip;
+            written += skip;
+            length = capacity;
+        }
+        grow(Math.min(written + length, capacity));
+        int position = (int) (written % capacity);
+        int first = Math.min(length, capacity - position);
+        System.arraycopy(src, offset, data, position, first);
+        System.arraycopy(src, offset + first, data, 0, length - first);
+        written += length;
+        notifyAll();
+    }
+
+    /**
+     * Grows the backing array to hold at least {@code size} bytes. Until it reaches the capacity the
+     * ring has not wrapped, so stream offsets are still array indexes and a plain copy keeps them valid.
+     */
+    private void grow(long size) {
+        if (size <= data.length) {
+            return;
+        }
+        long doubled = Math.max((long) data.length * 2, INITIAL_SIZE);
+        data = Arrays.copyOf(data, (int) Math.min(capacity, Math.max(size, doubled)));
+    }
+
+    private void spill(byte[] src, int offset, int length) {
+        if (spill == null || spillStopped || spilled >= spill.maxBytes()) {
+            return;
+        }
+        try {
+            if (spillChannel == null) {
+                if (written + length < spill.threshold()) {
+                    return;
+                }
+                if (spill.budget().get() <= 0) {
+                    spillStopped = true;
+                    return;
+                }
+                Files.createDirectories(spill.directory());
+                spillPath = Files.createTempFile(spill.directory(), "shell-output-", ".log");
+                spillChannel = FileChannel.open(spillPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                // Nothing was dropped yet: the ring still holds the whole stream
+                appendToSpill(data, 0, (int) written);
+            }
+            appendToSpill(src, offset, length);
+        } catch (IOException e) {
+            // Disk full or unwritable: stop spilling and keep what was written
+            spillStopped = true;
+            closeSpillChannel();
+        }
+    }
+
+    private void appendToSpill(byte[] src, int offset, int length) throws IOException {
+        long wanted = Math.min(length, spill.maxBytes() - spilled);
+        long available = spill.budget().getAndUpdate(remaining -> remaining - Math.min(remaining, wanted));
+        int allowed = (int) Math.min(wanted, Math.max(0, available));
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(src, offset, allowed);
+            while (buffer.hasRemaining()) {
+                spillChannel.write(buffer);
+            }
+        } catch (IOException e) {
+            spill.budget().addAndGet(allowed);
+            throw e;
+        }
+        spilled += allowed;
+        if (allowed < wanted) {
+            // Out of budget: the file keeps the prefix written so far
+            spillStopped = true;
+        }
+        if (spillStopped || spilled >= spill.maxBytes()) {
+            closeSpillChannel();
+        }
+    }
+
+    private void closeSpillChannel() {
+        if (spillChannel != null) {
+            try {
+                spillChannel.close();
+            } catch (IOException ignored) {
+                // Nothing more will be written to it
+            }
+            spillChannel = null;
+        }
+    }
+
+    /** The spill file, or null if the stream never spilled. It holds the stream's bytes [0, {@link #spilledBytes()}). */
+    synchronized Path spillFile() {
+        return spillPath;
+    }
+
+    synchronized long spilledBytes() {
+        return spilled;
+    }
+
+    /** Stops spilling and deletes the spill file. */
+    synchronized void discardSpill() {
+        spillStopped = true;
+        closeSpillChannel();
+        if (spillPath != null) {
+            try {
+                Files.deleteIfExists(spillPath);
+            } catch (IOException ignored) {
+                // Left for the OS to clean up with the temp directory
+            }
+            spillPath = null;
+            spill.budget().addAndGet(spilled);
+            spilled = 0;
+        }
+    }
+
+    /** Offset of the oldest byte still held in memory. */
+    synchronized long start() {
+        return keep == Keep.HEAD ? 0 : Math.max(0, written - capacity);
+    }
+
+    /** Offset just past the newest byte still held in memory. */
+    private long retainedEnd() {
+        return keep == Keep.HEAD ? Math.min(written, capacity) : written;
+    }
+
+    /** Total number of bytes written to the stream so far. */
+    synchronized long end() {
+        return written;
+    }
+
+    synchronized long droppedBytes() {
+        return keep == Keep.HEAD ? Math.max(0, written - capacity) : start();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Reads up to {@code maxBytes} starting at {@code cursor}. If the cursor points at bytes that
+     * were already overwritten, reading resumes at the oldest retained byte.
+     */
+    synchronized Chunk read(long cursor, int maxBytes) {
+        long end = retainedEnd();
+        long from = Math.max(Math.max(cursor, 0), start());
+        if (from > end) {
+            from = end;
+        }
+        int length = (int) Math.min(Math.max(maxBytes, 0), end - from);
+        byte[] bytes = new byte[length];
+        int position = (int) (from % capacity);
+        int first = Math.min(length, capacity - position);
+        System.arraycopy(data, position, bytes, 0, first);
+        System.arraycopy(data, 0, bytes, first, length - first);
+        if (from + length < end) {
+            // Stop before a multi-byte character cut by maxBytes; the next read picks it up whole
+            int complete = length - incompleteUtf8Tail(bytes);
+            if (complete > 0 && complete < length) {
+                bytes = Arrays.copyOf(bytes, complete);
+                length = complete;
+            }
+        }
+        return new Chunk(from, from + length, Math.max(0, from - Math.max(cursor, 0)), bytes);
+    }
+
+    private static int incompleteUtf8Tail(byte[] bytes) {
+        int continuation = 0;
+        for (int i = bytes.length - 1; i >= 0 && continuation < 3; i--) {
+            int b = bytes[i] & 0xFF;
+            if ((b & 0xC0) == 0x80) {
+                continuation++;
+                continue;
+            }
+            int expected = b >= 0xF0 ? 3 : b >= 0xE0 ? 2 : b >= 0xC0 ? 1 : 0;
+            return expected > continuation ? continuation + 1 : 0;
+        }
+        return 0;
+    }
+
+    /** All bytes currently retained, decoded as UTF-8. */
+    String contents() {
+        return read(0, capacity).text();
+    }
+
+    synchronized void close() {
+        closed = true;
+        closeSpillChannel();
+        notifyAll();
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Waits until the draining thread reached EOF, so a finished process reports its complete output.
+     */
+    synchronized boolean awaitClosed(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!closed) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Waits until bytes beyond {@code cursor} were written or the buffer was closed. Returns false on timeout.
+     */
+    synchronized boolean awaitData(long cursor, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (written <= cursor && !closed) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * A slice of the stream: {@code start} and {@code end} are absolute offsets and {@code skipped}
+     * counts bytes between the requested cursor and {@code start} that were no longer retained.
+     */
+    record Chunk(long start, long end, long skipped, byte[] bytes) {
+        String text() {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
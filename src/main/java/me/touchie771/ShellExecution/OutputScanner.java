@@ -0,0 +1,406 @@
+package me.touchie771.ShellExecution;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Pattern;
+
+/**
+ * Searches and tails the captured output of a stream without copying it to the caller. The spill
+ * file, if any, is scanned through memory-mapped windows; the part of the stream held only in
+ * memory is scanned in place. Lines are decoded to text only when they are reported or when the
+ * pattern needs a regex match.
+ */
+final class OutputScanner {
+
+    // Bytes of the spill file mapped at a time
+    private static final int WINDOW_BYTES = 64 << 20;
+    // Longer lines are still matched in full up to this size, but reported truncated
+    private static final int MAX_LINE_BYTES = 1 << 20;
+    private static final int MAX_REPORTED_LINE_CHARS = 2000;
+    static final int MAX_TAIL_BYTES = 4 << 20;
+    static final int MAX_GREP_CHARS = 4 << 20;
+    private static final Pattern REGEX_SYNTAX = Pattern.compile("[\\\\^$.|?*+()\\[\\]{}]");
+
+    private OutputScanner() {
+    }
+
+    /**
+     * Appends every line containing a match of {@code pattern}, grep style: {@code N:line} for
+     * matches, {@code N-line} for context lines and {@code --} between separate groups. Stops once
+     * about {@link #MAX_GREP_CHARS} characters have been appended. Returns the number of matching lines reported.
+     */
+    static int grep(OutputBuffer buffer, Pattern pattern, int context, int maxMatches, StringBuilder out) throws IOException {
+        try (Source source = Source.of(buffer)) {
+            Grep grep = new Grep(pattern, context, maxMatches, out);
+            source.scan(grep);
+            if (grep.truncated) {
+                out.append("[output truncated after ").append(MAX_GREP_CHARS).append(" characters]\n");
+            }
+            return grep.matches;
+        }
+    }
+
+    /** Appends the last {@code lines} lines of the stream, at most {@link #MAX_TAIL_BYTES} of them. */
+    static void tail(OutputBuffer buffer, int lines, StringBuilder out) throws IOException {
+        try (Source source = Source.of(buffer)) {
+            long from = source.tailStart(lines);
+            if (source.end() - from > MAX_TAIL_BYTES) {
+                from = source.end() - MAX_TAIL_BYTES;
+                out.append("[output truncated to the last ").append(MAX_TAIL_BYTES).append(" bytes]\n");
+            } else if (from == source.firstAvailable() && from > 0) {
+                out.append("[").append(from).append(" earlier bytes not retained]\n");
+            }
+            if (source.hasGap() && from < source.gapStart()) {
+                source.copy(from, source.gapStart(), out);
+                out.append("\n[").append(source.gapEnd() - source.gapStart()).append(" bytes not retained]\n");
+                from = source.gapEnd();
+            } else if (source.hasGap() && from < source.gapEnd()) {
+                // The byte limit cut into the gap: start where the in-memory part begins
+                out.append("[").append(source.gapEnd() - from).append(" bytes not retained]\n");
+                from = source.gapEnd();
+            }
+            source.copy(Math.max(from, source.firstAvailable()), source.end(), out);
+        }
+    }
+
+    /** Receives the lines of the stream in order. */
+    private interface LineVisitor {
+        /** Returns false to stop scanning. */
+        boolean line(ByteBuffer bytes, int from, int to);
+
+        void gap(long bytes);
+    }
+
+    private static final class Grep implements LineVisitor {
+        private final Pattern pattern;
+        private final byte[] literal;
+        private final int context;
+        private final int maxMatches;
+        private final StringBuilder out;
+        private final int outStart;
+        private final byte[] scratch = new byte[MAX_LINE_BYTES];
+        // Last lines seen, for leading context; the buffers stay valid for the whole scan
+        private final ByteBuffer[] recentBuffers;
+        private final int[] recentFrom;
+        private final int[] recentTo;
+        private final long[] recentNumbers;
+        private int recentCount;
+        private int recentNext;
+        private long lineNumber;
+        private long lastReported;
+        private int trailing;
+        private int matches;
+        private boolean truncated;
+
+        Grep(Pattern pattern, int context, int maxMatches, StringBuilder out) {
+            this.pattern = pattern;
+            // Plain text patterns are matched on the raw bytes, without decoding the line
+            this.literal = pattern.flags() == 0 && !REGEX_SYNTAX.matcher(pattern.pattern()).find()
+                    ? pattern.pattern().getBytes(StandardCharsets.UTF_8)
+                    : null;
+            this.context = context;
+            this.maxMatches = maxMatches;
+            this.out = out;
+            this.outStart = out.length();
+            this.recentBuffers = new ByteBuffer[context];
+            this.recentFrom = new int[context];
+            this.recentTo = new int[context];
+            this.recentNumbers = new long[context];
+        }
+
+        @Override
+        public boolean line(ByteBuffer bytes, int from, int to) {
+            if (out.length() - outStart >= MAX_GREP_CHARS) {
+                truncated = true;
+                return false;
+            }
+            lineNumber++;
+            if (matches < maxMatches && matches(bytes, from, to)) {
+                matches++;
+                if (context > 0 && lastReported > 0 && lineNumber - recentCount > lastReported + 1) {
+                    out.append("--\n");
+                }
+                for (int i = 0; i < recentCount; i++) {
+                    int index = Math.floorMod(recentNext - recentCount + i, context);
+                    report(recentNumbers[index], '-', recentBuffers[index], recentFrom[index], recentTo[index]);
+                }
+                recentCount = 0;
+                report(lineNumber, ':', bytes, from, to);
+                trailing = context;
+                return true;
+            }
+            if (trailing > 0) {
+                trailing--;
+                report(lineNumber, '-', bytes, from, to);
+                return true;
+            }
+            if (matches >= maxMatches) {
+                return false;
+            }
+            if (context > 0) {
+                recentBuffers[recentNext] = bytes;
+                recentFrom[recentNext] = from;
+                recentTo[recentNext] = to;
+                recentNumbers[recentNext] = lineNumber;
+                recentNext = (recentNext + 1) % context;
+                recentCount = Math.min(recentCount + 1, context);
+            }
+            return true;
+        }
+
+        @Override
+        public void gap(long bytes) {
+            out.append("[").append(bytes).append(" bytes not retained; line numbers restart]\n");
+            lineNumber = 0;
+            lastReported = 0;
+            recentCount = 0;
+            trailing = 0;
+        }
+
+        private boolean matches(ByteBuffer bytes, int from, int to) {
+            if (literal != null) {
+                return indexOf(bytes, from, to, literal) >= 0;
+            }
+            return pattern.matcher(decode(bytes, from, to)).find();
+        }
+
+        private void report(long number, char separator, ByteBuffer bytes, int from, int to) {
+            out.append(number).append(separator);
+            String text = decode(bytes, from, to);
+            if (text.length() > MAX_REPORTED_LINE_CHARS) {
+                out.append(text, 0, MAX_REPORTED_LINE_CHARS).append(" [line truncated]");
+            } else {
+                out.append(text);
+            }
+            out.append('\n');
+            lastReported = number;
+        }
+
+        private String decode(ByteBuffer bytes, int from, int to) {
+            int length = Math.min(to - from, scratch.length);
+            bytes.get(from, scratch, 0, length);
+            // Drop a trailing carriage return of CRLF output
+            if (length > 0 && scratch[length - 1] == '\r') {
+                length--;
+            }
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private static int indexOf(ByteBuffer bytes, int from, int to, byte[] needle) {
+            if (needle.length == 0) {
+                return from;
+            }
+            byte first = needle[0];
+            int last = to - needle.length;
+            outer:
+            for (int i = from; i <= last; i++) {
+                if (bytes.get(i) != first) {
+                    continue;
+                }
+                for (int j = 1; j < needle.length; j++) {
+                    if (bytes.get(i + j) != needle[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The stream as it can still be read: bytes [0, fileBytes) from the spill file and the in-memory
+     * tail [tailStart, end). Bytes between the two, if any, are no longer retained.
+     */
+    private static final class Source implements AutoCloseable {
+        private final FileChannel channel;
+        private final long fileBytes;
+        private final ByteBuffer tail;
+        private final long tailStart;
+        private final long end;
+
+        private Source(FileChannel channel, long fileBytes, ByteBuffer tail, long tailStart) {
+            this.channel = channel;
+            this.fileBytes = fileBytes;
+            this.tail = tail;
+            this.tailStart = tailStart;
+            this.end = tailStart + tail.limit();
+        }
+
+        static Source of(OutputBuffer buffer) throws IOException {
+            // Read the file size first: it only grows, so the in-memory part read afterwards can only overlap it
+            Path file = buffer.spillFile();
+            long fileBytes = file == null ? 0 : buffer.spilledBytes();
+            FileChannel channel = null;
+            if (file != null) {
+                try {
+                    channel = FileChannel.open(file, StandardOpenOption.READ);
+                } catch (NoSuchFileException e) {
+                    // Discarded in the meantime; fall back to memory
+                    fileBytes = 0;
+                }
+            }
+            OutputBuffer.Chunk chunk = buffer.read(Math.max(buffer.start(), fileBytes), buffer.capacity());
+            return new Source(channel, fileBytes, ByteBuffer.wrap(chunk.bytes()), chunk.start());
+        }
+
+        long end() {
+            return end;
+        }
+
+        long firstAvailable() {
+            return fileBytes > 0 ? 0 : tailStart;
+        }
+
+        /** True if bytes between the spill file and the in-memory part are lost. */
+        boolean hasGap() {
+            return fileBytes > 0 && tailStart > fileBytes;
+        }
+
+        long gapStart() {
+            return fileBytes;
+        }
+
+        long gapEnd() {
+            return tailStart;
+        }
+
+        /** Feeds every complete line, and a final unterminated one, to the visitor. */
+        void scan(LineVisitor visitor) throws IOException {
+            ByteArrayOutputStream carry = new ByteArrayOutputStream();
+            if (fileBytes > 0) {
+                for (long position = 0; position < fileBytes; position += WINDOW_BYTES) {
+                    ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_BYTES, fileBytes - position));
+                    if (!scan(window, 0, carry, visitor)) {
+                        return;
+                    }
+                }
+                if (hasGap()) {
+                    if (carry.size() > 0 && !flush(carry, visitor)) {
+                        return;
+                    }
+                    visitor.gap(tailStart - fileBytes);
+                }
+            } else if (tailStart > 0) {
+                visitor.gap(tailStart);
+            }
+            int skip = (int) Math.max(0, fileBytes - tailStart);
+            if (scan(tail, skip, carry, visitor) && carry.size() > 0) {
+                flush(carry, visitor);
+            }
+        }
+
+        private static boolean scan(ByteBuffer bytes, int from, ByteArrayOutputStream carry, LineVisitor visitor) {
+            int lineStart = from;
+            int limit = bytes.limit();
+            for (int i = from; i < limit; i++) {
+                if (bytes.get(i) != '\n') {
+                    continue;
+                }
+                boolean more;
+                if (carry.size() > 0) {
+                    append(carry, bytes, lineStart, i);
+                    more = flush(carry, visitor);
+                } else {
+                    more = visitor.line(bytes, lineStart, i);
+                }
+                if (!more) {
+                    return false;
+                }
+                lineStart = i + 1;
+            }
+            // The last line continues in the next window
+            append(carry, bytes, lineStart, limit);
+            return true;
+        }
+
+        private static void append(ByteArrayOutputStream carry, ByteBuffer bytes, int from, int to) {
+            int length = Math.min(to - from, MAX_LINE_BYTES - carry.size());
+            if (length > 0) {
+                byte[] copy = new byte[length];
+                bytes.get(from, copy, 0, length);
+                carry.write(copy, 0, length);
+            }
+        }
+
+        private static boolean flush(ByteArrayOutputStream carry, LineVisitor visitor) {
+            // The visitor may keep a reference for context, so hand it a copy
+            byte[] line = carry.toByteArray();
+            carry.reset();
+            return visitor.line(ByteBuffer.wrap(line), 0, line.length);
+        }
+
+        /** Start offset of the last {@code lines} lines, or the earliest retained offset if there are fewer. */
+        long tailStart(int lines) throws IOException {
+            long position = end;
+            // A final newline ends the last line rather than starting an empty one
+            if (position > firstAvailable() && byteAt(position - 1) == '\n') {
+                position--;
+            }
+            int found = 0;
+            // In-memory part first, then the spill file in windows, walking backwards
+            long stop = Math.max(tailStart, fileBytes);
+            for (long i = position - 1; i >= stop; i--) {
+                if (tail.get((int) (i - tailStart)) == '\n' && ++found == lines) {
+                    return i + 1;
+                }
+            }
+            if (fileBytes == 0) {
+                return tailStart;
+            }
+            long fileEnd = Math.min(position, fileBytes);
+            for (long windowEnd = fileEnd; windowEnd > 0; windowEnd -= WINDOW_BYTES) {
+                long windowStart = Math.max(0, windowEnd - WINDOW_BYTES);
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+                for (int i = (int) (windowEnd - windowStart) - 1; i >= 0; i--) {
+                    if (window.get(i) == '\n' && ++found == lines) {
+                        return windowStart + i + 1;
+                    }
+                }
+            }
+            return 0;
+        }
+
+        /** Appends bytes [from, to) as text; the range must not cross the gap. */
+        void copy(long from, long to, StringBuilder out) throws IOException {
+            if (to <= from) {
+                return;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) (to - from));
+            long fileTo = Math.min(to, fileBytes);
+            for (long position = from; position < fileTo; position += WINDOW_BYTES) {
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_BYTES, fileTo - position));
+                byte[] chunk = new byte[window.remaining()];
+                window.get(chunk);
+                bytes.write(chunk, 0, chunk.length);
+            }
+            long memoryFrom = Math.max(from, fileBytes);
+            if (memoryFrom < to) {
+                bytes.write(tail.array(), (int) (memoryFrom - tailStart), (int) (to - memoryFrom));
+            }
+            out.append(bytes.toString(StandardCharsets.UTF_8));
+        }
+
+        private byte byteAt(long position) throws IOException {
+            if (position >= tailStart && position >= fileBytes) {
+                return tail.get((int) (position - tailStart));
+            }
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, position);
+            return one.get(0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package me.touchie771.ShellExecution;
+
+import java.util.List;
+
+/**
+ * Outcome of a pipeline execution. {@code stdout} is the bounded output of the last stage, empty when
+ * it was redirected to a file. Each stage reports its own exit code and bounded stderr; exit codes
+ * are null when the pipeline did not run.
+ */
+public record PipelineResult(List<Stage> stages, boolean timedOut, long durationMillis,
+                             String stdout, long stdoutBytes, long stdoutDropped) {
+
+    public record Stage(String command, Integer exitCode, String stderr, long stderrBytes, long stderrDropped) {
+    }
+}
@@ -0,0 +1,220 @@
+package me.touchie771.ShellExecution;
+
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admission control for every process the server forks. Commands that a tool call waits on and
+ * background commands draw from separate pools, so long-running background jobs can't starve
+ * synchronous calls. In each pool at most {@code maxConcurrent} processes run at once; further
+ * submissions wait in a FIFO or priority queue until a running process releases its slot.
+ */
+@Service
+public class ProcessScheduler {
+
+    public static final int DEFAULT_PRIORITY = 0;
+
+    private final boolean priorityOrdering;
+    private final Pool foreground;
+    private final Pool background;
+
+    public ProcessScheduler(@Value("${shell.scheduler.max-concurrent:0}") int maxConcurrent,
+                            @Value("${shell.scheduler.max-background:0}") int maxBackground,
+                            @Value("${shell.scheduler.policy:fifo}") String policy) {
+        int defaultLimit = Runtime.getRuntime().availableProcessors() * 2;
+        this.priorityOrdering = "priority".equalsIgnoreCase(policy);
+        Comparator<Ticket> fifo = Comparator.comparingLong(Ticket::order);
+        Comparator<Ticket> order = priorityOrdering
+                ? Comparator.comparingInt(Ticket::priority).reversed().thenComparing(fifo)
+                : fifo;
+        this.foreground = new Pool(maxConcurrent > 0 ? maxConcurrent : defaultLimit, order);
+        this.background = new Pool(maxBackground > 0 ? maxBackground : defaultLimit, order);
+    }
+
+    /**
+     * Queues a request for a background process slot. The returned ticket's future completes as
+     * soon as a slot is free, which may be immediately.
+     */
+    public Ticket submitBackground(int priority) {
+        return background.submit(priority);
+    }
+
+    /**
+     * Blocks until a slot for a process the caller waits on is free. The caller must release the
+     * returned slot once its process exits.
+     */
+    public Slot acquire(int priority) throws InterruptedException {
+        Ticket ticket = foreground.submit(priority);
+        try {
+            return ticket.slot().get();
+        } catch (InterruptedException e) {
+            if (!ticket.cancel()) {
+                // The slot was granted while we were being interrupted; hand it back
+                ticket.slot().join().release();
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Scheduler ticket failed", e.getCause());
+        }
+    }
+
+    @Tool(name = "get-scheduler-stats", description = "Get process scheduler statistics: concurrency limit, running processes, queue depth and queue wait times, " +
+            "for commands tools wait on and, under 'background', for background commands")
+    public Map<String, Object> getSchedulerStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("policy", priorityOrdering ? "priority" : "fifo");
+        foreground.stats(stats);
+        Map<String, Object> backgroundStats = new LinkedHashMap<>();
+        background.stats(backgroundStats);
+        stats.put("background", backgroundStats);
+        return stats;
+    }
+
+    /** One set of slots with its own queue. */
+    private static final class Pool {
+        private final int maxConcurrent;
+        private final PriorityQueue<Ticket> queue;
+
+        // All fields below are guarded by this
+        private int running;
+        private long nextTicket;
+        private long submitted;
+        private long started;
+        private long cancelled;
+        private int maxQueueDepth;
+        private long totalWaitNanos;
+        private long maxWaitNanos;
+
+        Pool(int maxConcurrent, Comparator<Ticket> order) {
+            this.maxConcurrent = maxConcurrent;
+            this.queue = new PriorityQueue<>(order);
+        }
+
+        Ticket submit(int priority) {
+            Ticket ticket;
+            synchronized (this) {
+                ticket = new Ticket(this, nextTicket++, priority, System.nanoTime());
+                submitted++;
+                queue.add(ticket);
+                maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+            }
+            dispatch();
+            return ticket;
+        }
+
+        synchronized void stats(Map<String, Object> stats) {
+            stats.put("maxConcurrent", maxConcurrent);
+            stats.put("running", running);
+            stats.put("queueDepth", queue.size());
+            stats.put("maxQueueDepth", maxQueueDepth);
+            stats.put("submitted", submitted);
+            stats.put("started", started);
+            stats.put("cancelled", cancelled);
+            stats.put("averageWaitMillis", started == 0 ? 0.0 : totalWaitNanos / 1_000_000.0 / started);
+            stats.put("maxWaitMillis", maxWaitNanos / 1_000_000.0);
+        }
+
+        synchronized int queuePosition(Ticket ticket) {
+            int ahead = 0;
+            for (Ticket other : queue) {
+                if (other != ticket && queue.comparator().compare(other, ticket) < 0) {
+                    ahead++;
+                }
+            }
+            return ahead;
+        }
+
+        void release() {
+            synchronized (this) {
+                running--;
+            }
+            dispatch();
+        }
+
+        boolean cancel(Ticket ticket) {
+            synchronized (this) {
+                if (!queue.remove(ticket)) {
+                    return false;
+                }
+                cancelled++;
+            }
+            ticket.slot().cancel(false);
+            return true;
+        }
+
+        private void dispatch() {
+            // Complete futures outside the lock: their callbacks may launch processes or submit again
+            List<Ticket> granted = new ArrayList<>();
+            synchronized (this) {
+                long now = System.nanoTime();
+                while (running < maxConcurrent && !queue.isEmpty()) {
+                    Ticket ticket = queue.poll();
+                    running++;
+                    started++;
+                    long waited = now - ticket.enqueuedNanos();
+                    totalWaitNanos += waited;
+                    maxWaitNanos = Math.max(maxWaitNanos, waited);
+                    granted.add(ticket);
+                }
+            }
+            for (Ticket ticket : granted) {
+                ticket.slot().complete(new Slot(this));
+            }
+        }
+    }
+
+    /** A queued request for a slot. */
+    public static final class Ticket {
+        private final Pool pool;
+        private final long order;
+        private final int priority;
+        private final long enqueuedNanos;
+        private final CompletableFuture<Slot> slot = new CompletableFuture<>();
+
+        private Ticket(Pool pool, long order, int priority, long enqueuedNanos) {
+            this.pool = pool;
+            this.order = order;
+            this.priority = priority;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        public CompletableFuture<Slot> slot() { return slot; }
+        public int priority() { return priority; }
+
+        /** Number of tickets that will be served before this one, or 0 once it was granted. */
+        public int position() { return slot.isDone() ? 0 : pool.queuePosition(this); }
+
+        /** Withdraws the ticket if it is still queued; returns false if a slot was already granted. */
+        public boolean cancel() { return pool.cancel(this); }
+
+        long order() { return order; }
+        long enqueuedNanos() { return enqueuedNanos; }
+    }
+
+    /** A granted slot; releasing it more than once has no effect. */
+    public static final class Slot {
+        private final Pool pool;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Slot(Pool pool) {
+            this.pool = pool;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                pool.release();
+            }
+        }
+    }
+}
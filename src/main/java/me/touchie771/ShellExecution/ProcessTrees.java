@@ -0,0 +1,73 @@
+package me.touchie771.ShellExecution;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers for acting on a process together with every process it spawned.
+ */
+final class ProcessTrees {
+
+    private ProcessTrees() {
+    }
+
+    /** Kills the process and all of its descendants without waiting for them to exit. */
+    static void destroyForcibly(Process process) {
+        // Snapshot descendants first: once the parent dies they get re-parented and are no longer found
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    /**
+     * Asks the process and all of its descendants to exit (SIGTERM on Unix), then kills whatever is
+     * still alive once the grace period passes. Nothing blocks: the returned future completes with
+     * the number of processes that had to be killed, once the whole tree is gone. The escalation runs
+     * on {@code executor}, since walking and killing the tree is too slow for the shared timer thread.
+     */
+    static CompletableFuture<Integer> terminate(Process process, Duration grace, Executor executor) {
+        List<ProcessHandle> tree = snapshot(process.toHandle());
+        for (ProcessHandle handle : tree) {
+            handle.destroy();
+        }
+        return exited(tree)
+                .completeOnTimeout(null, grace.toMillis(), TimeUnit.MILLISECONDS)
+                .thenComposeAsync(ignored -> {
+                    // Processes forked while shutting down are only found now; collect them before killing their parents
+                    Set<ProcessHandle> survivors = new LinkedHashSet<>();
+                    for (ProcessHandle handle : tree) {
+                        if (handle.isAlive()) {
+                            survivors.addAll(snapshot(handle));
+                        }
+                    }
+                    int killed = 0;
+                    for (ProcessHandle handle : survivors) {
+                        if (handle.destroyForcibly()) {
+                            killed++;
+                        }
+                    }
+                    int count = killed;
+                    return exited(survivors).thenApply(exitedAll -> count);
+                }, executor);
+    }
+
+    /** The process followed by its descendants, captured while the parent links are still intact. */
+    private static List<ProcessHandle> snapshot(ProcessHandle root) {
+        List<ProcessHandle> tree = new ArrayList<>();
+        tree.add(root);
+        root.descendants().forEach(tree::add);
+        return tree;
+    }
+
+    private static CompletableFuture<Void> exited(Collection<ProcessHandle> handles) {
+        return CompletableFuture.allOf(handles.stream()
+                .map(ProcessHandle::onExit)
+                .toArray(CompletableFuture[]::new));
+    }
+}
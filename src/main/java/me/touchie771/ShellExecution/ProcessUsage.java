@@ -0,0 +1,156 @@
+package me.touchie771.ShellExecution;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resource usage of a process together with its descendants, taken from periodic samples. CPU time
+ * and I/O of descendants that already exited are included once their parent has reaped them, since
+ * the kernel then adds them to the parent's own counters. RSS and I/O come from {@code /proc} and
+ * are -1 where it is not available.
+ */
+final class ProcessUsage {
+
+    private static final Path PROC = Path.of("/proc");
+    // USER_HZ, the unit of the times in /proc/<pid>/stat, is 100 on every mainstream Linux build
+    private static final long NANOS_PER_TICK = 10_000_000;
+
+    // Latest values per live pid: {cpuNanos, readBytes, writeBytes}; only touched under this
+    private final Map<Long, long[]> counters = new HashMap<>();
+
+    private volatile long sampledAt;
+    private volatile long cpuNanos;
+    private volatile long rssBytes = -1;
+    private volatile long peakRssBytes = -1;
+    private volatile long readBytes = -1;
+    private volatile long writeBytes = -1;
+
+    /** Samples the process and every live descendant. */
+    synchronized void sample(ProcessHandle root) {
+        Map<Long, long[]> previous = new HashMap<>(counters);
+        counters.clear();
+        long rss = sampleOne(root, previous);
+        List<ProcessHandle> descendants = root.descendants().toList();
+        for (ProcessHandle descendant : descendants) {
+            long descendantRss = sampleOne(descendant, previous);
+            if (descendantRss >= 0) {
+                rss = Math.max(rss, 0) + descendantRss;
+            }
+        }
+
+        long cpu = 0;
+        long read = -1;
+        long write = -1;
+        for (long[] values : counters.values()) {
+            cpu += values[0];
+            if (values[1] >= 0) {
+                read = Math.max(read, 0) + values[1];
+                write = Math.max(write, 0) + values[2];
+            }
+        }
+        // A child that exited but was not reaped yet is briefly counted nowhere; don't report a drop
+        cpuNanos = Math.max(cpuNanos, cpu);
+        readBytes = Math.max(readBytes, read);
+        writeBytes = Math.max(writeBytes, write);
+        rssBytes = rss;
+        peakRssBytes = Math.max(peakRssBytes, rss);
+        sampledAt = System.currentTimeMillis();
+    }
+
+    /** Records the counters of one process and returns its RSS, or -1 if unknown. */
+    private long sampleOne(ProcessHandle process, Map<Long, long[]> previous) {
+        long pid = process.pid();
+        long[] values = previous.getOrDefault(pid, new long[]{0, -1, -1});
+        counters.put(pid, values);
+
+        Path dir = PROC.resolve(Long.toString(pid));
+        long rss = -1;
+        try {
+            values[0] = readCpuNanos(dir);
+        } catch (IOException | RuntimeException e) {
+            // No procfs (e.g. macOS): own CPU time only
+            process.info().totalCpuDuration().map(Duration::toNanos).ifPresent(cpu -> values[0] = cpu);
+        }
+        try {
+            for (String line : Files.readAllLines(dir.resolve("status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    rss = parseKilobytes(line) * 1024;
+                    break;
+                }
+            }
+            for (String line : Files.readAllLines(dir.resolve("io"))) {
+                if (line.startsWith("read_bytes:")) {
+                    values[1] = Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                } else if (line.startsWith("write_bytes:")) {
+                    values[2] = Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                }
+            }
+        } catch (IOException | SecurityException | NumberFormatException e) {
+            // No procfs, the process exited between listing and reading, or io is not readable
+        }
+        return rss;
+    }
+
+    /** utime + stime + cutime + cstime: own CPU time plus that of reaped children. */
+    private static long readCpuNanos(Path dir) throws IOException {
+        String stat = Files.readString(dir.resolve("stat"));
+        // The command name in parentheses may contain spaces; fields are counted after it
+        String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+        long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12])
+                + Long.parseLong(fields[13]) + Long.parseLong(fields[14]);
+        return ticks * NANOS_PER_TICK;
+    }
+
+    private static long parseKilobytes(String line) {
+        // "VmRSS:	    1234 kB"
+        String value = line.substring(line.indexOf(':') + 1).trim();
+        int space = value.indexOf(' ');
+        return Long.parseLong(space > 0 ? value.substring(0, space) : value);
+    }
+
+    boolean isSampled() {
+        return sampledAt > 0;
+    }
+
+    long sampledAt() { return sampledAt; }
+    long cpuMillis() { return cpuNanos / 1_000_000; }
+    long rssBytes() { return rssBytes; }
+    long peakRssBytes() { return peakRssBytes; }
+    long readBytes() { return readBytes; }
+    long writeBytes() { return writeBytes; }
+
+    /** One-line summary for status output, e.g. "CPU 1.20 s, RSS 12.0 MB (peak 15.3 MB), read 0 B, written 4.0 KB". */
+    String describe() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format(Locale.ROOT, "CPU %.2f s", cpuNanos / 1e9));
+        if (rssBytes >= 0) {
+            result.append(", RSS ").append(formatBytes(rssBytes))
+                    .append(" (peak ").append(formatBytes(peakRssBytes)).append(")");
+        }
+        if (readBytes >= 0) {
+            result.append(", read ").append(formatBytes(readBytes))
+                    .append(", written ").append(formatBytes(writeBytes));
+        }
+        return result.toString();
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        String[] units = {"KB", "MB", "GB", "TB"};
+        double value = bytes;
+        int unit = -1;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format(Locale.ROOT, "%.1f %s", value, units[unit]);
+    }
+}
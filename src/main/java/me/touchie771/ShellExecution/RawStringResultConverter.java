@@ -0,0 +1,17 @@
+package me.touchie771.ShellExecution;
+
+import org.springframework.ai.tool.execution.ToolCallResultConverter;
+
+import java.lang.reflect.Type;
+
+/**
+ * Passes a tool's String result through unchanged instead of serializing it as a JSON string, which
+ * would escape every quote and newline of text that the MCP layer then escapes again.
+ */
+public class RawStringResultConverter implements ToolCallResultConverter {
+
+    @Override
+    public String convert(Object result, Type returnType) {
+        return result == null ? "" : result.toString();
+    }
+}
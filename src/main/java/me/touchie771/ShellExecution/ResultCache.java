@@ -0,0 +1,269 @@
+package me.touchie771.ShellExecution;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Opt-in cache of command results for read-only commands such as {@code uname -a} or
+ * {@code git rev-parse HEAD}. Only commands matching the allowlist are cached, keyed by their
+ * arguments, the working directory and the configured environment variables. Entries expire after
+ * a TTL, the least recently used ones are evicted beyond the size limit, and with watching enabled
+ * any file change under the working directory clears the cache.
+ */
+@Service
+public class ResultCache {
+
+    private final boolean enabled;
+    private final List<List<String>> allowlist;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final List<String> envKeys;
+    private final Path workingDirectory = Path.of(System.getProperty("user.dir")).toAbsolutePath();
+    private final int watchMaxDirectories;
+    private final AtomicInteger watchedDirectories = new AtomicInteger();
+    private final WatchService watchService;
+
+    // Access-ordered, so iteration starts at the least recently used entry; guarded by itself
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Counters below are guarded by entries
+    private long hits;
+    private long misses;
+    private long bypassed;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+
+    public ResultCache(@Value("${shell.cache.enabled:false}") boolean enabled,
+                       @Value("${shell.cache.commands:uname,hostname,whoami,which,git rev-parse}") String commands,
+                       @Value("${shell.cache.ttl-seconds:60}") long ttlSeconds,
+                       @Value("${shell.cache.max-entries:256}") int maxEntries,
+                       @Value("${shell.cache.env-keys:PATH}") String envKeys,
+                       @Value("${shell.cache.watch:false}") boolean watch,
+                       @Value("${shell.cache.watch-max-directories:1024}") int watchMaxDirectories) throws IOException {
+        this.enabled = enabled;
+        this.allowlist = split(commands).stream().map(entry -> List.of(entry.split("\\s+"))).toList();
+        this.ttlMillis = ttlSeconds * 1000;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.envKeys = split(envKeys);
+        this.watchMaxDirectories = watchMaxDirectories;
+        this.watchService = enabled && watch ? startWatching() : null;
+    }
+
+    /**
+     * Returns the cached result for the command, or runs it and caches the result if the command is
+     * allowlisted. Only successful results are cached: failures, timeouts and commands that did not
+     * run are always retried. {@code onHit} is called with each result served from the cache.
+     */
+    ExecutionResult get(String[] command, int maxOutputBytes, OutputBuffer.Keep keep, Supplier<ExecutionResult> run,
+                        Consumer<ExecutionResult> onHit) {
+        if (!enabled || !isCacheable(command)) {
+            if (enabled) {
+                synchronized (entries) {
+                    bypassed++;
+                }
+            }
+            return run.get();
+        }
+        Key key = new Key(List.of(command), workingDirectory.toString(), environment(), maxOutputBytes, keep);
+        long now = System.currentTimeMillis();
+        ExecutionResult hit = null;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt() > now) {
+                hits++;
+                hit = entry.result();
+            } else {
+                if (entry != null) {
+                    entries.remove(key);
+                    expirations++;
+                }
+                misses++;
+            }
+        }
+        if (hit != null) {
+            // Outside the lock, so recording the hit never holds up other lookups
+            onHit.accept(hit);
+            return hit;
+        }
+
+        // Run outside the lock; two concurrent misses for the same key both execute, the last one wins
+        ExecutionResult result = run.get();
+        if (result.exitCode() != null && result.exitCode() == 0 && !result.timedOut()) {
+            synchronized (entries) {
+                entries.put(key, new Entry(result, System.currentTimeMillis() + ttlMillis));
+                while (entries.size() > maxEntries) {
+                    entries.pollFirstEntry();
+                    evictions++;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Tool(name = "get-cache-stats", description = "Get command result cache statistics: hits, misses, entries, evictions and the allowlisted commands")
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("commands", allowlist.stream().map(prefix -> String.join(" ", prefix)).toList());
+        stats.put("ttlSeconds", ttlMillis / 1000);
+        stats.put("maxEntries", maxEntries);
+        stats.put("watching", watchService != null);
+        stats.put("watchedDirectories", watchedDirectories.get());
+        synchronized (entries) {
+            stats.put("entries", entries.size());
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+            stats.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+            stats.put("bypassed", bypassed);
+            stats.put("evictions", evictions);
+            stats.put("expirations", expirations);
+            stats.put("invalidations", invalidations);
+        }
+        return stats;
+    }
+
+    @Tool(name = "clear-command-cache", description = "Clears all cached command results")
+    public String clearCommandCache() {
+        int cleared;
+        synchronized (entries) {
+            cleared = entries.size();
+            entries.clear();
+        }
+        return "Cleared " + cleared + " cached results.";
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private boolean isCacheable(String[] command) {
+        for (List<String> prefix : allowlist) {
+            if (command.length >= prefix.size()
+                    && Arrays.asList(command).subList(0, prefix.size()).equals(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Map<String, String> environment() {
+        Map<String, String> values = new TreeMap<>();
+        for (String name : envKeys) {
+            String value = System.getenv(name);
+            if (value != null) {
+                values.put(name, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Registers the working directory and its subdirectories, up to the configured number of
+     * directories, and clears the cache on every change seen there. Directories created later are
+     * registered as they appear.
+     */
+    private WatchService startWatching() throws IOException {
+        WatchService service = FileSystems.getDefault().newWatchService();
+        register(service, workingDirectory);
+        Thread.ofVirtual().name("result-cache-watcher").start(() -> {
+            try {
+                while (true) {
+                    WatchKey key = service.take();
+                    Path directory = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                                && Files.isDirectory(directory.resolve((Path) event.context()), LinkOption.NOFOLLOW_LINKS)) {
+                            // Registered before the cache is cleared below, so no change in it goes unseen
+                            register(service, directory.resolve((Path) event.context()));
+                        }
+                    }
+                    if (!key.reset()) {
+                        // The directory is gone, and so is its registration
+                        watchedDirectories.decrementAndGet();
+                    }
+                    synchronized (entries) {
+                        if (!entries.isEmpty()) {
+                            entries.clear();
+                            invalidations++;
+                        }
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Shutting down
+            }
+        });
+        return service;
+    }
+
+    /** Registers the directory and its subdirectories while fewer than the configured maximum are watched. */
+    private void register(WatchService service, Path root) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                    if (watchedDirectories.get() >= watchMaxDirectories) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    try {
+                        directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    } catch (IOException e) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    watchedDirectories.incrementAndGet();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // Unreadable or vanished; changes there won't invalidate the cache
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            // The directory vanished before it could be walked; its removal clears the cache anyway
+        }
+    }
+
+    private static List<String> split(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(part -> !part.isEmpty())
+                .toList();
+    }
+
+    private record Key(List<String> command, String workingDirectory, Map<String, String> environment,
+                       int maxOutputBytes, OutputBuffer.Keep keep) {
+    }
+
+    private record Entry(ExecutionResult result, long expiresAt) {
+    }
+}
@@ -0,0 +1,196 @@
+package me.touchie771.ShellExecution;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call counts, errors and latency histograms for every tool, plus process spawn latency and captured
+ * output volume. Served by the get-server-metrics tool and optionally written to a file in the
+ * Prometheus text format.
+ */
+@Service
+public class ServerMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(ServerMetrics.class);
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final long startTime = System.currentTimeMillis();
+    private final Map<String, ToolMetrics> tools = new ConcurrentHashMap<>();
+    private final LatencyHistogram spawnLatency = new LatencyHistogram();
+    private final LongAdder spawnFailures = new LongAdder();
+    private final LongAdder capturedBytes = new LongAdder();
+    private final Path prometheusFile;
+    // Set after a failed write, so a bad path is logged once rather than on every tick
+    private volatile boolean prometheusWriteFailing;
+
+    public ServerMetrics(@Value("${shell.metrics.prometheus-file:}") String prometheusFile) {
+        this.prometheusFile = prometheusFile == null || prometheusFile.isBlank() ? null : Path.of(prometheusFile);
+    }
+
+    /** Returns the metrics of a tool, creating them on first use; callers keep the instance for the hot path. */
+    public ToolMetrics forTool(String toolName) {
+        return tools.computeIfAbsent(toolName, name -> new ToolMetrics());
+    }
+
+    /** Records how long it took to fork and exec a process. */
+    void recordSpawn(long nanos) {
+        spawnLatency.record(nanos);
+    }
+
+    void recordSpawnFailure() {
+        spawnFailures.increment();
+    }
+
+    /** Records output bytes a process printed, whether or not they were retained. */
+    void recordCapturedBytes(long bytes) {
+        capturedBytes.add(bytes);
+    }
+
+    @Tool(name = "get-server-metrics", description = "Get server metrics: per-tool call counts, errors, timeouts and latency percentiles, " +
+            "process spawn latency and total bytes of command output captured")
+    public Map<String, Object> getServerMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("uptimeSeconds", (System.currentTimeMillis() - startTime) / 1000);
+
+        Map<String, Object> toolStats = new TreeMap<>();
+        tools.forEach((name, tool) -> {
+            if (tool.latency.count() == 0) {
+                return;
+            }
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("calls", tool.latency.count());
+            stats.put("errors", tool.errors.sum());
+            stats.put("timeouts", tool.timeouts.sum());
+            putLatency(stats, tool.latency);
+            toolStats.put(name, stats);
+        });
+        metrics.put("tools", toolStats);
+
+        Map<String, Object> processes = new LinkedHashMap<>();
+        processes.put("spawned", spawnLatency.count());
+        processes.put("spawnFailures", spawnFailures.sum());
+        putLatency(processes, spawnLatency);
+        processes.put("capturedBytes", capturedBytes.sum());
+        metrics.put("processes", processes);
+        return metrics;
+    }
+
+    /** Rewrites the Prometheus text file, if one is configured; a failed write is logged and skipped until the next tick. */
+    @Scheduled(fixedDelayString = "${shell.metrics.prometheus-interval-ms:15000}")
+    public void writePrometheusFile() {
+        if (prometheusFile == null) {
+            return;
+        }
+        Path temp = null;
+        try {
+            Path parent = prometheusFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            // Write then rename, so a scraper never reads a half-written file
+            temp = Files.createTempFile(parent, ".metrics", ".tmp");
+            Files.writeString(temp, toPrometheusText(), StandardCharsets.UTF_8);
+            Files.move(temp, prometheusFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (prometheusWriteFailing) {
+                prometheusWriteFailing = false;
+                log.info("Writing metrics to {} again", prometheusFile);
+            }
+        } catch (IOException e) {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // Left behind; the next successful write does not depend on it
+                }
+            }
+            if (!prometheusWriteFailing) {
+                prometheusWriteFailing = true;
+                log.warn("Could not write metrics to {}; retrying quietly until a write succeeds", prometheusFile, e);
+            }
+        }
+    }
+
+    String toPrometheusText() {
+        StringBuilder out = new StringBuilder();
+        out.append("# HELP shell_tool_calls_total Tool invocations.\n# TYPE shell_tool_calls_total counter\n");
+        new TreeMap<>(tools).forEach((name, tool) -> sample(out, "shell_tool_calls_total", name, null, tool.latency.count()));
+        out.append("# HELP shell_tool_errors_total Tool invocations that failed, including timeouts.\n# TYPE shell_tool_errors_total counter\n");
+        new TreeMap<>(tools).forEach((name, tool) -> sample(out, "shell_tool_errors_total", name, null, tool.errors.sum()));
+        out.append("# HELP shell_tool_timeouts_total Tool invocations cancelled after their timeout.\n# TYPE shell_tool_timeouts_total counter\n");
+        new TreeMap<>(tools).forEach((name, tool) -> sample(out, "shell_tool_timeouts_total", name, null, tool.timeouts.sum()));
+        out.append("# HELP shell_tool_duration_seconds Tool invocation latency.\n# TYPE shell_tool_duration_seconds summary\n");
+        new TreeMap<>(tools).forEach((name, tool) -> summary(out, "shell_tool_duration_seconds", name, tool.latency));
+        out.append("# HELP shell_process_spawn_seconds Time to fork and exec a process.\n# TYPE shell_process_spawn_seconds summary\n");
+        summary(out, "shell_process_spawn_seconds", null, spawnLatency);
+        out.append("# HELP shell_process_spawn_failures_total Processes that could not be started.\n# TYPE shell_process_spawn_failures_total counter\n");
+        sample(out, "shell_process_spawn_failures_total", null, null, spawnFailures.sum());
+        out.append("# HELP shell_process_output_bytes_total Bytes of output printed by processes.\n# TYPE shell_process_output_bytes_total counter\n");
+        sample(out, "shell_process_output_bytes_total", null, null, capturedBytes.sum());
+        return out.toString();
+    }
+
+    private static void summary(StringBuilder out, String name, String tool, LatencyHistogram histogram) {
+        for (double quantile : QUANTILES) {
+            sample(out, name, tool, quantile, histogram.quantileNanos(quantile) / 1e9);
+        }
+        sample(out, name + "_sum", tool, null, histogram.sumNanos() / 1e9);
+        sample(out, name + "_count", tool, null, histogram.count());
+    }
+
+    private static void sample(StringBuilder out, String name, String tool, Double quantile, double value) {
+        out.append(name);
+        if (tool != null || quantile != null) {
+            out.append('{');
+            if (tool != null) {
+                out.append("tool=\"").append(tool.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            }
+            if (quantile != null) {
+                out.append(tool != null ? "," : "").append("quantile=\"").append(quantile).append('"');
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value)
+                : String.format(Locale.ROOT, "%.9f", value)).append('\n');
+    }
+
+    private static void putLatency(Map<String, Object> stats, LatencyHistogram histogram) {
+        long count = histogram.count();
+        stats.put("meanMillis", count == 0 ? 0.0 : histogram.sumNanos() / 1e6 / count);
+        stats.put("p50Millis", histogram.quantileNanos(0.5) / 1e6);
+        stats.put("p90Millis", histogram.quantileNanos(0.9) / 1e6);
+        stats.put("p99Millis", histogram.quantileNanos(0.99) / 1e6);
+        stats.put("maxMillis", histogram.maxNanos() / 1e6);
+    }
+
+    /** Counters for one tool; recording never allocates. */
+    public static final class ToolMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+
+        void recordCall(long startNanos, boolean failed, boolean timedOut) {
+            latency.record(System.nanoTime() - startNanos);
+            if (failed) {
+                errors.increment();
+            }
+            if (timedOut) {
+                timeouts.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package me.touchie771.ShellExecution;
+
+/**
+ * Outcome of a command run in a shell session. {@code output} holds stdout and stderr interleaved as
+ * the shell wrote them; {@code outputDropped} counts bytes left out because they exceeded the limit.
+ * {@code exitCode} is null when the command did not complete, in which case {@code output} explains why.
+ */
+public record SessionResult(String sessionId, Integer exitCode, boolean timedOut, long durationMillis,
+                            String output, long outputDropped) {
+}
@@ -1,23 +1,61 @@
 package me.touchie771.ShellExecution;
 
+import io.modelcontextprotocol.server.McpAsyncServer;
+import io.modelcontextprotocol.server.McpSyncServer;
 import org.springframework.ai.support.ToolCallbacks;
 import org.springframework.ai.tool.ToolCallback;
+import org.springframework.boot.LazyInitializationExcludeFilter;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @SpringBootApplication
+@EnableScheduling
 public class ShellExecutionApplication {
 
 	public static void main(String[] args) {
+		// The MCP server dispatches synchronous tool calls on Reactor's bounded-elastic scheduler;
+		// backing it with virtual threads keeps slow commands from exhausting its thread cap
+		if (System.getProperty("reactor.schedulers.defaultBoundedElasticOnVirtualThreads") == null) {
+			System.setProperty("reactor.schedulers.defaultBoundedElasticOnVirtualThreads", "true");
+		}
 		SpringApplication.run(ShellExecutionApplication.class, args);
 	}
 
+    /**
+     * The services arrive as lazy proxies: tool definitions are read from their classes, so with the
+     * fast-start profile each service is only created when one of its tools is first called.
+     */
     @Bean
-    public List<ToolCallback> tools(Terminal terminal, CommandHistory commandHistory, AsyncProcessManager asyncProcessManager, 
-                                   OsInfo osInfo, SystemResources systemResources, EnvironmentTools environmentTools) {
-        return List.of(ToolCallbacks.from(terminal, commandHistory, asyncProcessManager, osInfo, systemResources, environmentTools));
+    public List<ToolCallback> tools(@Lazy Terminal terminal, @Lazy CommandHistory commandHistory, @Lazy AsyncProcessManager asyncProcessManager,
+                                   @Lazy OsInfo osInfo, @Lazy SystemResources systemResources, @Lazy EnvironmentTools environmentTools,
+                                   @Lazy ProcessScheduler processScheduler, @Lazy ResultCache resultCache, @Lazy ShellSessions shellSessions,
+                                   ServerMetrics serverMetrics, Environment environment) {
+        ExecutorService toolExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        long defaultTimeout = environment.getProperty("shell.tools.timeout-seconds", Long.class, 600L);
+        return Arrays.stream(ToolCallbacks.from(terminal, commandHistory, asyncProcessManager, osInfo, systemResources, environmentTools,
+                        processScheduler, resultCache, shellSessions, serverMetrics))
+                .map(callback -> {
+                    // Per-tool override, e.g. shell.tools.timeout-seconds.execute-command=30
+                    String name = callback.getToolDefinition().name();
+                    long timeout = environment.getProperty("shell.tools.timeout-seconds." + name, Long.class, defaultTimeout);
+                    return (ToolCallback) new ManagedToolCallback(callback, toolExecutor, Duration.ofSeconds(timeout), serverMetrics.forTool(name));
+                })
+                .toList();
     }
-}
\ No newline at end of file
+
+    /** Keeps the MCP server, which starts the transport, eager when lazy initialization is enabled. */
+    @Bean
+    public static LazyInitializationExcludeFilter mcpServerExcludeFilter() {
+        return LazyInitializationExcludeFilter.forBeanTypes(McpSyncServer.class, McpAsyncServer.class);
+    }
+}
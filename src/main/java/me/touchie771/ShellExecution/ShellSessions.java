@@ -0,0 +1,300 @@
+package me.touchie771.ShellExecution;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Long-lived shells that keep their working directory, variables and activated environments between
+ * commands. Each command is written to the shell's stdin followed by a unique sentinel that prints
+ * the exit status; the output is read incrementally until the sentinel shows up.
+ */
+@Service
+public class ShellSessions {
+
+    private static final int STREAM_BUFFER_BYTES = 1 << 20;
+    private static final int READ_CHUNK_BYTES = 65536;
+    // How long to wait for the sentinel after killing a timed out command before giving up on the shell
+    private static final long RECOVERY_GRACE_MILLIS = 2000;
+
+    private final Map<String, ShellSession> sessions = new ConcurrentHashMap<>();
+    // Open sessions plus those being opened, so concurrent opens can't exceed maxSessions
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private final CommandHistory commandHistory;
+    private final ProcessScheduler scheduler;
+    private final String defaultShell;
+    private final int maxSessions;
+    private final long idleTimeoutMillis;
+    private final long defaultTimeoutMillis;
+    private final int defaultMaxOutputBytes;
+    private final int maxBufferBytes;
+
+    public ShellSessions(CommandHistory commandHistory, ProcessScheduler scheduler,
+                         @Value("${shell.session.shell:/bin/sh}") String defaultShell,
+                         @Value("${shell.session.max-sessions:16}") int maxSessions,
+                         @Value("${shell.session.idle-timeout-seconds:900}") long idleTimeoutSeconds,
+                         @Value("${shell.terminal.timeout-seconds:0}") long defaultTimeoutSeconds,
+                         @Value("${shell.terminal.max-output-bytes:1048576}") int defaultMaxOutputBytes,
+                         @Value("${shell.output.max-buffer-bytes:16777216}") int maxBufferBytes) {
+        this.commandHistory = commandHistory;
+        this.scheduler = scheduler;
+        this.defaultShell = defaultShell;
+        this.maxSessions = maxSessions;
+        this.idleTimeoutMillis = idleTimeoutSeconds * 1000;
+        this.defaultTimeoutMillis = defaultTimeoutSeconds * 1000;
+        this.maxBufferBytes = Math.max(1, maxBufferBytes);
+        this.defaultMaxOutputBytes = Math.min(defaultMaxOutputBytes, this.maxBufferBytes);
+    }
+
+    @Tool(name = "open-session", description = "Opens a persistent shell session and returns its session ID. Commands run with session-exec " +
+            "share the shell's state: 'cd', exported variables and activated virtual environments carry over between commands.")
+    public String openSession(@ToolParam(required = false, description = "Shell to run (default /bin/sh)") String shell,
+                              @ToolParam(required = false, description = "Initial working directory (default: the server's working directory)") String workingDirectory) {
+        if (openSessions.incrementAndGet() > maxSessions) {
+            openSessions.decrementAndGet();
+            return "Too many open sessions (" + maxSessions + "). Close one with close-session first.";
+        }
+        ProcessBuilder builder = new ProcessBuilder(shell == null || shell.isBlank() ? defaultShell : shell)
+                .redirectErrorStream(true);
+        if (workingDirectory != null && !workingDirectory.isBlank()) {
+            builder.directory(new File(workingDirectory));
+        }
+        try {
+            Process process = builder.start();
+            String sessionId = UUID.randomUUID().toString();
+            ShellSession session = new ShellSession(sessionId, String.join(" ", builder.command()), process, new OutputBuffer(STREAM_BUFFER_BYTES));
+            session.output.drainFrom(process.getInputStream(), "session-" + sessionId);
+            sessions.put(sessionId, session);
+            return "Session opened. Session ID: " + sessionId;
+        } catch (IOException | RuntimeException e) {
+            openSessions.decrementAndGet();
+            return "Failed to open session: " + e.getMessage();
+        }
+    }
+
+    @Tool(name = "session-exec", description = "Runs a command in an open shell session and returns its output and exit code. " +
+            "The command is a shell command line, for example: 'cd src && ls'. Commands in the same session run one at a time.")
+    public SessionResult sessionExec(String sessionId, String command,
+                                     @ToolParam(required = false, description = "Kill the command after this many milliseconds (default: no timeout)") Long timeoutMs,
+                                     @ToolParam(required = false, description = "Maximum bytes of output kept (default 1048576, the last bytes are kept)") Integer maxOutputBytes) {
+        ShellSession session = sessions.get(sessionId);
+        if (session == null) {
+            return new SessionResult(sessionId, null, false, 0, "Session not found: " + sessionId, 0);
+        }
+        long timeout = timeoutMs == null ? defaultTimeoutMillis : timeoutMs;
+        int limit = Math.min(maxOutputBytes == null || maxOutputBytes <= 0 ? defaultMaxOutputBytes : maxOutputBytes, maxBufferBytes);
+
+        // Queue on the session first, so a command waiting its turn in the session doesn't hold a process slot
+        try {
+            session.lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new SessionResult(sessionId, null, false, 0, "Interrupted while waiting for the session", 0);
+        }
+        try {
+            if (sessions.get(sessionId) != session) {
+                return new SessionResult(sessionId, null, false, 0, "Session was closed: " + sessionId, 0);
+            }
+            ProcessScheduler.Slot slot;
+            try {
+                slot = scheduler.acquire(ProcessScheduler.DEFAULT_PRIORITY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new SessionResult(sessionId, null, false, 0, "Interrupted while waiting for a free process slot", 0);
+            }
+            try {
+                SessionResult result = session.exec(command, timeout, limit);
+                if (result.exitCode() == null) {
+                    // The shell is gone or out of step with our sentinels; it can't be trusted with another command
+                    close(sessionId);
+                } else {
+                    commandHistory.addToCommandHistory("[SESSION] " + command, result.exitCode(), result.durationMillis());
+                }
+                return result;
+            } finally {
+                slot.release();
+            }
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    @Tool(name = "close-session", description = "Closes a shell session and kills any command still running in it")
+    public String closeSession(String sessionId) {
+        return close(sessionId) ? "Session " + sessionId + " closed." : "Session not found: " + sessionId;
+    }
+
+    @Tool(name = "list-sessions", description = "Lists open shell sessions with their shell, command count and idle time")
+    public String listSessions() {
+        if (sessions.isEmpty()) {
+            return "No shell sessions are open.";
+        }
+        long now = System.currentTimeMillis();
+        StringBuilder result = new StringBuilder("Shell Sessions:\n===================\n");
+        for (ShellSession session : sessions.values()) {
+            result.append("ID: ").append(session.sessionId).append("\n");
+            result.append("Shell: ").append(session.shell).append("\n");
+            result.append("Commands: ").append(session.commands).append("\n");
+            result.append("Idle: ").append((now - session.lastUsed) / 1000).append(" seconds\n");
+            result.append("---\n");
+        }
+        return result.toString();
+    }
+
+    /** Closes sessions that have not run a command for longer than the idle timeout. */
+    @Scheduled(fixedDelayString = "${shell.session.reaper-interval-ms:60000}")
+    public void closeIdleSessions() {
+        long now = System.currentTimeMillis();
+        for (ShellSession session : sessions.values()) {
+            // A session busy with a long command holds its lock and is never idle
+            if (now - session.lastUsed > idleTimeoutMillis && session.lock.tryLock()) {
+                try {
+                    close(session.sessionId);
+                } finally {
+                    session.lock.unlock();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        sessions.keySet().forEach(this::close);
+    }
+
+    private boolean close(String sessionId) {
+        ShellSession session = sessions.remove(sessionId);
+        if (session == null) {
+            return false;
+        }
+        openSessions.decrementAndGet();
+        ProcessTrees.destroyForcibly(session.process);
+        try {
+            session.process.getOutputStream().close();
+        } catch (IOException ignored) {
+            // Already closed by the dying shell
+        }
+        return true;
+    }
+
+    private static final class ShellSession {
+        private final String sessionId;
+        private final String shell;
+        private final Process process;
+        private final OutputBuffer output;
+        private final ReentrantLock lock = new ReentrantLock();
+        // Guarded by lock
+        private long cursor;
+        private long commands;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        ShellSession(String sessionId, String shell, Process process, OutputBuffer output) {
+            this.sessionId = sessionId;
+            this.shell = shell;
+            this.process = process;
+            this.output = output;
+        }
+
+        SessionResult exec(String command, long timeoutMillis, int maxOutputBytes) {
+            long startTime = System.currentTimeMillis();
+            lastUsed = startTime;
+            commands++;
+            String sentinel = "__SESSION_DONE_" + UUID.randomUUID().toString().replace("-", "") + "__";
+            // eval runs in this shell, so cd and variables persist; through 'command' a syntax error fails the
+            // command instead of exiting the shell. Stdin is detached so the command can't swallow the lines
+            // that follow, and the newline before the sentinel guarantees it starts a line.
+            String script = "command eval '" + command.replace("'", "'\\''") + "' </dev/null\n"
+                    + "printf '\\n%s:%d\\n' '" + sentinel + "' \"$?\"\n";
+            try {
+                OutputStream stdin = process.getOutputStream();
+                stdin.write(script.getBytes(StandardCharsets.UTF_8));
+                stdin.flush();
+            } catch (IOException e) {
+                return failed("Session shell is no longer running: " + e.getMessage(), startTime);
+            }
+
+            OutputBuffer collected = new OutputBuffer(maxOutputBytes);
+            Pattern done = Pattern.compile("\n" + Pattern.quote(sentinel) + ":(\\d+)\n");
+            // The last bytes read are held back until they can no longer be the start of a split sentinel line
+            int holdBack = sentinel.length() + 16;
+            byte[] pending = new byte[0];
+            long deadline = timeoutMillis > 0 ? startTime + timeoutMillis : Long.MAX_VALUE;
+            boolean timedOut = false;
+            long dropped = 0;
+            try {
+                while (true) {
+                    OutputBuffer.Chunk chunk = output.read(cursor, READ_CHUNK_BYTES);
+                    cursor = chunk.end();
+                    if (chunk.skipped() > 0) {
+                        // The held back bytes no longer adjoin the chunk, so they can't be part of a sentinel
+                        dropped += chunk.skipped();
+                        collected.write(pending, 0, pending.length);
+                        pending = new byte[0];
+                    }
+                    byte[] window = new byte[pending.length + chunk.bytes().length];
+                    System.arraycopy(pending, 0, window, 0, pending.length);
+                    System.arraycopy(chunk.bytes(), 0, window, pending.length, chunk.bytes().length);
+                    // ISO-8859-1 maps each byte to one char, so match positions are byte offsets; the sentinel is ASCII
+                    Matcher matcher = done.matcher(new String(window, StandardCharsets.ISO_8859_1));
+                    if (matcher.find()) {
+                        int exitCode = Integer.parseInt(matcher.group(1));
+                        // Everything before the sentinel line is the command's output. Whatever the shell printed
+                        // after it (a background job, say) stays unread for the next command.
+                        collected.write(window, 0, matcher.start());
+                        cursor = chunk.end() - (window.length - matcher.end());
+                        long outputStart = collected.start();
+                        String text = collected.read(outputStart, (int) (collected.end() - outputStart)).text();
+                        lastUsed = System.currentTimeMillis();
+                        return new SessionResult(sessionId, exitCode, timedOut, lastUsed - startTime, text, dropped + outputStart);
+                    }
+                    int keep = Math.min(holdBack, window.length);
+                    collected.write(window, 0, window.length - keep);
+                    pending = Arrays.copyOfRange(window, window.length - keep, window.length);
+                    if (cursor < output.end()) {
+                        continue;
+                    }
+                    if (output.isClosed()) {
+                        return failed("Session shell exited", startTime);
+                    }
+                    long now = System.currentTimeMillis();
+                    if (now >= deadline) {
+                        if (timedOut) {
+                            return failed("Command timed out and the shell did not recover", startTime);
+                        }
+                        // Kill what the shell started; the shell itself survives and reports the status
+                        timedOut = true;
+                        process.descendants().forEach(ProcessHandle::destroyForcibly);
+                        deadline = now + RECOVERY_GRACE_MILLIS;
+                        continue;
+                    }
+                    output.awaitData(cursor, Math.min(deadline - now, 1000));
+                }
+            } catch (InterruptedException e) {
+                // Cancelled by the caller; the session is closed by the caller since its output is now out of step
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                Thread.currentThread().interrupt();
+                return failed("cancelled", startTime);
+            }
+        }
+
+        private SessionResult failed(String reason, long startTime) {
+            return new SessionResult(sessionId, null, false, System.currentTimeMillis() - startTime, reason, 0);
+        }
+    }
+}
@@ -1,18 +1,61 @@
 package me.touchie771.ShellExecution;
 
 import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
 import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystems;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * System resource tools. CPU, load, memory, GC and disk metrics are collected by a background
+ * sampler; the tools answer from the latest sample instead of querying the system on every call.
+ */
 @Service
 public class SystemResources {
 
+    private final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+    private final Map<String, Object> staticSystemInfo;
+
+    // Ring of the most recent samples, guarded by itself; latest is also published on its own for lock-free reads
+    private final SystemSnapshot[] window;
+    private int windowNext;
+    private int windowSize;
+    private volatile Sample latest;
+
+    public SystemResources(@Value("${shell.system.window-samples:60}") int windowSamples) {
+        this.window = new SystemSnapshot[Math.max(1, windowSamples)];
+        Map<String, Object> info = new HashMap<>();
+        info.put("osName", System.getProperty("os.name"));
+        info.put("osVersion", System.getProperty("os.version"));
+        info.put("osArchitecture", System.getProperty("os.arch"));
+        info.put("osFamily", getOsFamily());
+        info.put("javaVersion", System.getProperty("java.version"));
+        info.put("javaVendor", System.getProperty("java.vendor"));
+        info.put("userName", System.getProperty("user.name"));
+        info.put("userHome", System.getProperty("user.home"));
+        info.put("is64Bit", is64Bit());
+        this.staticSystemInfo = Map.copyOf(info);
+        refresh();
+    }
+
     @Tool(name = "get-available-processors", description = "Get the number of available processors")
     public int getAvailableProcessors() {
         return Runtime.getRuntime().availableProcessors();
@@ -35,27 +78,57 @@ public class SystemResources {
 
     @Tool(name = "get-system-load-average", description = "Get the system load average for the last minute")
     public double getSystemLoadAverage() {
-        return ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+        return latest.snapshot().systemLoadAverage();
     }
 
     @Tool(name = "get-disk-space-info", description = "Get disk space information for a given path (defaults to current directory)")
     public Map<String, Long> getDiskSpaceInfo(String path) {
         if (path == null || path.trim().isEmpty()) {
-            path = System.getProperty("user.dir");
+            // The working directory is sampled in the background
+            return latest.workingDirDisk();
         }
-        File file = new File(path);
-        Map<String, Long> spaceInfo = new HashMap<>();
-        spaceInfo.put("totalSpace", file.getTotalSpace());
-        spaceInfo.put("freeSpace", file.getFreeSpace());
-        spaceInfo.put("usableSpace", file.getUsableSpace());
-        return spaceInfo;
+        return diskSpace(new File(path));
     }
 
     @Tool(name = "get-memory-info", description = "Get comprehensive memory information")
     public Map<String, Object> getMemoryInfo() {
-        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        return latest.memoryInfo();
+    }
+
+    @Tool(name = "get-system-info", description = "Get comprehensive system information")
+    public Map<String, Object> getSystemInfo() {
+        return latest.systemInfo();
+    }
+
+    @Tool(name = "get-system-metrics", description = "Get the latest sampled system metrics: CPU load, load average, physical and JVM memory, " +
+            "garbage collection totals and disk usage per mount")
+    public SystemSnapshot getSystemMetrics() {
+        return latest.snapshot();
+    }
+
+    @Tool(name = "get-system-metrics-history", description = "Get the most recent system metric samples, oldest first, to see trends " +
+            "without polling")
+    public List<SystemSnapshot> getSystemMetricsHistory(
+            @ToolParam(required = false, description = "Number of samples to return (default: all retained samples)") Integer samples) {
+        synchronized (window) {
+            int count = samples == null || samples <= 0 ? windowSize : Math.min(samples, windowSize);
+            List<SystemSnapshot> result = new ArrayList<>(count);
+            for (int i = count; i > 0; i--) {
+                result.add(window[Math.floorMod(windowNext - i, window.length)]);
+            }
+            return result;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${shell.system.sample-interval-ms:5000}")
+    public void sample() {
+        refresh();
+    }
+
+    private void refresh() {
+        SystemSnapshot snapshot = takeSnapshot();
         Runtime runtime = Runtime.getRuntime();
-        
+
         Map<String, Object> memoryInfo = new HashMap<>();
         memoryInfo.put("maxMemory", runtime.maxMemory());
         memoryInfo.put("totalMemory", runtime.totalMemory());
@@ -63,30 +136,77 @@ public class SystemResources {
         memoryInfo.put("usedMemory", runtime.totalMemory() - runtime.freeMemory());
         memoryInfo.put("heapMemoryUsage", memoryBean.getHeapMemoryUsage());
         memoryInfo.put("nonHeapMemoryUsage", memoryBean.getNonHeapMemoryUsage());
-        
-        return memoryInfo;
-    }
+        memoryInfo.put("sampledAt", snapshot.timestamp());
 
-    @Tool(name = "get-system-info", description = "Get comprehensive system information")
-    public Map<String, Object> getSystemInfo() {
-        OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
-        Runtime runtime = Runtime.getRuntime();
-        
-        Map<String, Object> systemInfo = new HashMap<>();
-        systemInfo.put("osName", System.getProperty("os.name"));
-        systemInfo.put("osVersion", System.getProperty("os.version"));
-        systemInfo.put("osArchitecture", System.getProperty("os.arch"));
-        systemInfo.put("osFamily", getOsFamily());
+        Map<String, Object> systemInfo = new HashMap<>(staticSystemInfo);
         systemInfo.put("availableProcessors", runtime.availableProcessors());
-        systemInfo.put("systemLoadAverage", osBean.getSystemLoadAverage());
-        systemInfo.put("javaVersion", System.getProperty("java.version"));
-        systemInfo.put("javaVendor", System.getProperty("java.vendor"));
-        systemInfo.put("userName", System.getProperty("user.name"));
-        systemInfo.put("userHome", System.getProperty("user.home"));
+        systemInfo.put("systemLoadAverage", snapshot.systemLoadAverage());
         systemInfo.put("userDir", System.getProperty("user.dir"));
-        systemInfo.put("is64Bit", is64Bit());
-        
-        return systemInfo;
+        systemInfo.put("sampledAt", snapshot.timestamp());
+
+        latest = new Sample(snapshot, Map.copyOf(memoryInfo), Map.copyOf(systemInfo),
+                Map.copyOf(diskSpace(new File(System.getProperty("user.dir")))));
+        synchronized (window) {
+            window[windowNext] = snapshot;
+            windowNext = (windowNext + 1) % window.length;
+            windowSize = Math.min(windowSize + 1, window.length);
+        }
+    }
+
+    private SystemSnapshot takeSnapshot() {
+        double systemCpuLoad = -1;
+        double processCpuLoad = -1;
+        long totalPhysical = -1;
+        long freePhysical = -1;
+        if (osBean instanceof com.sun.management.OperatingSystemMXBean extended) {
+            systemCpuLoad = extended.getCpuLoad();
+            processCpuLoad = extended.getProcessCpuLoad();
+            totalPhysical = extended.getTotalMemorySize();
+            freePhysical = extended.getFreeMemorySize();
+        }
+        long gcCount = 0;
+        long gcTime = 0;
+        for (GarbageCollectorMXBean gc : gcBeans) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcTime += Math.max(0, gc.getCollectionTime());
+        }
+        MemoryUsage heap = memoryBean.getHeapMemoryUsage();
+        return new SystemSnapshot(System.currentTimeMillis(), systemCpuLoad, processCpuLoad, osBean.getSystemLoadAverage(),
+                totalPhysical, freePhysical, heap.getUsed(), heap.getCommitted(), heap.getMax(),
+                memoryBean.getNonHeapMemoryUsage().getUsed(), gcCount, gcTime, sampleDisks());
+    }
+
+    private static List<SystemSnapshot.DiskUsage> sampleDisks() {
+        List<SystemSnapshot.DiskUsage> disks = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (FileStore store : FileSystems.getDefault().getFileStores()) {
+            try {
+                long total = store.getTotalSpace();
+                // Skip pseudo filesystems such as proc and sysfs
+                if (total <= 0) {
+                    continue;
+                }
+                // Unix file stores describe themselves as "<mount point> (<device>)"
+                String description = store.toString();
+                int device = description.lastIndexOf(" (");
+                String mount = device > 0 ? description.substring(0, device) : description;
+                if (seen.add(mount)) {
+                    disks.add(new SystemSnapshot.DiskUsage(mount, store.type(), total,
+                            store.getUnallocatedSpace(), store.getUsableSpace()));
+                }
+            } catch (IOException | SecurityException e) {
+                // Mount became unavailable or is not readable; leave it out of this sample
+            }
+        }
+        return List.copyOf(disks);
+    }
+
+    private static Map<String, Long> diskSpace(File file) {
+        Map<String, Long> spaceInfo = new HashMap<>();
+        spaceInfo.put("totalSpace", file.getTotalSpace());
+        spaceInfo.put("freeSpace", file.getFreeSpace());
+        spaceInfo.put("usableSpace", file.getUsableSpace());
+        return spaceInfo;
     }
 
     private String getOsFamily() {
@@ -108,4 +228,8 @@ public class SystemResources {
         String arch = System.getProperty("os.arch");
         return arch.contains("64");
     }
+
+    private record Sample(SystemSnapshot snapshot, Map<String, Object> memoryInfo,
+                          Map<String, Object> systemInfo, Map<String, Long> workingDirDisk) {
+    }
 }
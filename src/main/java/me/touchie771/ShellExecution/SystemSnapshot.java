@@ -0,0 +1,25 @@
+package me.touchie771.ShellExecution;
+
+import java.util.List;
+
+/**
+ * One sample of host and JVM metrics taken by {@link SystemResources}. CPU loads are fractions
+ * between 0 and 1, or negative when the platform does not report them.
+ */
+public record SystemSnapshot(long timestamp,
+                             double systemCpuLoad,
+                             double processCpuLoad,
+                             double systemLoadAverage,
+                             long totalPhysicalMemory,
+                             long freePhysicalMemory,
+                             long heapUsed,
+                             long heapCommitted,
+                             long heapMax,
+                             long nonHeapUsed,
+                             long gcCount,
+                             long gcTimeMillis,
+                             List<DiskUsage> disks) {
+
+    public record DiskUsage(String mount, String type, long totalSpace, long freeSpace, long usableSpace) {
+    }
+}
@@ -1,40 +1,352 @@
 package me.touchie771.ShellExecution;
 
 import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class Terminal {
 
+    // How long to wait for the pipes to hit EOF after the process exited; a leftover grandchild may hold them open
+    private static final long DRAIN_GRACE_MILLIS = 2000;
+    private static final int DEFAULT_BATCH_PARALLELISM = 8;
+    private static final int DEFAULT_BATCH_OUTPUT_BYTES = 16384;
+
     private final CommandHistory commandHistory;
+    private final ProcessScheduler scheduler;
+    private final ResultCache resultCache;
+    private final ServerMetrics metrics;
+    private final long defaultTimeoutMillis;
+    private final int defaultMaxOutputBytes;
+    private final int maxBufferBytes;
+    private final OutputBuffer.Keep defaultKeep;
 
-    public Terminal(CommandHistory commandHistory) {
+    public Terminal(CommandHistory commandHistory, ProcessScheduler scheduler, ResultCache resultCache, ServerMetrics metrics,
+                    @Value("${shell.terminal.timeout-seconds:0}") long defaultTimeoutSeconds,
+                    @Value("${shell.terminal.max-output-bytes:1048576}") int defaultMaxOutputBytes,
+                    @Value("${shell.output.max-buffer-bytes:16777216}") int maxBufferBytes,
+                    @Value("${shell.terminal.truncation:tail}") String defaultTruncation) {
         this.commandHistory = commandHistory;
+        this.scheduler = scheduler;
+        this.resultCache = resultCache;
+        this.metrics = metrics;
+        this.defaultTimeoutMillis = defaultTimeoutSeconds * 1000;
+        this.maxBufferBytes = Math.max(1, maxBufferBytes);
+        this.defaultMaxOutputBytes = Math.min(defaultMaxOutputBytes, this.maxBufferBytes);
+        this.defaultKeep = parseTruncation(defaultTruncation);
     }
 
     @Tool(name = "execute-command", description = "Executes a terminal command and returns the output of it, " +
             "every arg should be a different element of the array, for example: ['cd', '..']")
     public String executeCommand(String[] command) {
+        ExecutionResult result = executeCached(command, defaultTimeoutMillis, defaultMaxOutputBytes, defaultKeep);
+        if (result.exitCode() == null) {
+            return "Command not executed successfully: " + result.stderr();
+        }
+        if (result.timedOut()) {
+            return "Command timed out after " + result.durationMillis() + " ms and was killed";
+        }
+        if (result.exitCode() == 0) {
+            return result.stdoutDropped() > 0
+                    ? "[" + result.stdoutDropped() + " bytes of output dropped]\n" + result.stdout()
+                    : result.stdout();
+        } else {
+            return "Command not executed successfully, exit code: " + result.exitCode()
+                    + (result.stderr().isEmpty() ? "" : "\n" + result.stderr());
+        }
+    }
+
+    @Tool(name = "execute-command-with-options", description = "Executes a terminal command with a timeout and an output size limit, " +
+            "capturing stdout and stderr separately. Every arg should be a different element of the array, for example: ['ls', '-la']. " +
+            "On timeout the command and all of its child processes are killed. Reports how many output bytes were dropped.")
+    public ExecutionResult executeCommandWithOptions(String[] command,
+                                                     @ToolParam(required = false, description = "Kill the command after this many milliseconds (default: no timeout)") Long timeoutMs,
+                                                     @ToolParam(required = false, description = "Maximum bytes kept per stream (default 1048576)") Integer maxOutputBytes,
+                                                     @ToolParam(required = false, description = "Which part to keep when output exceeds the limit: 'head' or 'tail' (default 'tail')") String truncation) {
+        return executeCached(command,
+                timeoutMs == null ? defaultTimeoutMillis : timeoutMs,
+                outputLimit(maxOutputBytes, defaultMaxOutputBytes),
+                truncation == null || truncation.isBlank() ? defaultKeep : parseTruncation(truncation));
+    }
+
+    @Tool(name = "execute-batch", description = "Executes many independent commands in parallel and returns all results at once, in the " +
+            "order given. Each command is an array of args, for example: [['git', 'status'], ['ls', '-la'], ['which', 'java']]. " +
+            "Use it instead of several execute-command calls when the commands don't depend on each other.")
+    public List<BatchResult> executeBatch(List<List<String>> commands,
+                                          @ToolParam(required = false, description = "Maximum commands running at once (default 8)") Integer parallelism,
+                                          @ToolParam(required = false, description = "Kill a command after this many milliseconds (default: no timeout)") Long timeoutMs,
+                                          @ToolParam(required = false, description = "Maximum bytes kept per stream of each command (default 16384)") Integer maxOutputBytes) {
+        if (commands == null || commands.isEmpty()) {
+            return List.of();
+        }
+        int permits = parallelism == null || parallelism <= 0 ? DEFAULT_BATCH_PARALLELISM : parallelism;
+        long timeout = timeoutMs == null ? defaultTimeoutMillis : timeoutMs;
+        int limit = outputLimit(maxOutputBytes, DEFAULT_BATCH_OUTPUT_BYTES);
+
+        // Virtual threads block cheaply while waiting for a permit or a scheduler slot
+        Semaphore running = new Semaphore(permits);
+        List<Callable<BatchResult>> tasks = new ArrayList<>(commands.size());
+        for (List<String> command : commands) {
+            String[] argv = command == null ? new String[0] : command.toArray(String[]::new);
+            tasks.add(() -> {
+                if (argv.length == 0) {
+                    return BatchResult.of(argv, notExecuted("empty command"));
+                }
+                running.acquire();
+                try {
+                    return BatchResult.of(argv, executeCached(argv, timeout, limit, defaultKeep));
+                } catch (RuntimeException e) {
+                    // e.g. a null argument; only this entry fails, the rest of the batch still reports
+                    return BatchResult.of(argv, notExecuted(e.getMessage() != null ? e.getMessage() : e.toString()));
+                } finally {
+                    running.release();
+                }
+            });
+        }
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<BatchResult> results = new ArrayList<>(tasks.size());
+            for (Future<BatchResult> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            // invokeAll cancelled the remaining commands, which kills any that were running
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch cancelled", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch command failed", e.getCause());
+        }
+    }
+
+    @Tool(name = "execute-pipeline", description = "Executes a pipeline of commands without a shell, connecting each stage's stdout " +
+            "to the next stage's stdin, like 'a | b | c'. Each stage is an array of args, for example: [['ps', 'aux'], ['grep', 'java'], ['wc', '-l']]. " +
+            "Intermediate data flows directly between the processes. Returns the last stage's output and every stage's exit code and stderr.")
+    public PipelineResult executePipeline(List<List<String>> stages,
+                                          @ToolParam(required = false, description = "File to feed to the first stage's stdin") String inputFile,
+                                          @ToolParam(required = false, description = "File to write the last stage's stdout to instead of returning it") String outputFile,
+                                          @ToolParam(required = false, description = "Append to outputFile instead of overwriting it (default false)") Boolean appendOutput,
+                                          @ToolParam(required = false, description = "Kill the whole pipeline after this many milliseconds (default: no timeout)") Long timeoutMs,
+                                          @ToolParam(required = false, description = "Maximum bytes kept of the last stage's stdout and of each stage's stderr (default 1048576)") Integer maxOutputBytes) {
+        if (stages == null || stages.isEmpty() || stages.stream().anyMatch(stage -> stage == null || stage.isEmpty())) {
+            throw new IllegalArgumentException("A pipeline needs at least one stage, and every stage needs a command");
+        }
+        List<ProcessBuilder> builders = new ArrayList<>(stages.size());
+        for (List<String> stage : stages) {
+            builders.add(new ProcessBuilder(stage));
+        }
+        if (inputFile != null && !inputFile.isBlank()) {
+            builders.getFirst().redirectInput(new File(inputFile));
+        }
+        if (outputFile != null && !outputFile.isBlank()) {
+            builders.getLast().redirectOutput(Boolean.TRUE.equals(appendOutput)
+                    ? ProcessBuilder.Redirect.appendTo(new File(outputFile))
+                    : ProcessBuilder.Redirect.to(new File(outputFile)));
+        }
+        return executePipeline(builders,
+                timeoutMs == null ? defaultTimeoutMillis : timeoutMs,
+                outputLimit(maxOutputBytes, defaultMaxOutputBytes),
+                defaultKeep);
+    }
+
+    /** The requested per-stream limit, or the fallback, capped at shell.output.max-buffer-bytes. */
+    private int outputLimit(Integer requested, int fallback) {
+        return Math.min(requested == null || requested <= 0 ? fallback : requested, maxBufferBytes);
+    }
+
+    /**
+     * Serves allowlisted read-only commands from the result cache, running them only on a miss.
+     * A hit still goes into the history, with the cached exit code and a duration of 0.
+     */
+    private ExecutionResult executeCached(String[] command, long timeoutMillis, int maxOutputBytes, OutputBuffer.Keep keep) {
+        return resultCache.get(command, maxOutputBytes, keep,
+                () -> execute(command, timeoutMillis, maxOutputBytes, keep),
+                hit -> commandHistory.addToCommandHistory(String.join(" ", command), hit.exitCode(), 0L));
+    }
+
+    /**
+     * Runs a command in a scheduler slot, draining stdout and stderr concurrently into bounded buffers.
+     * A timeout of zero or less waits indefinitely. Interrupting the calling thread kills the command.
+     */
+    ExecutionResult execute(String[] command, long timeoutMillis, int maxOutputBytes, OutputBuffer.Keep keep) {
+        ProcessScheduler.Slot slot;
         try {
-            Process process = Runtime.getRuntime().exec(command);
-            StringBuilder output = new StringBuilder();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
+            slot = scheduler.acquire(ProcessScheduler.DEFAULT_PRIORITY);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return notExecuted("interrupted while waiting for a free process slot");
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            Process process = spawn(() -> Runtime.getRuntime().exec(command));
+            OutputBuffer stdout = new OutputBuffer(maxOutputBytes, keep);
+            OutputBuffer stderr = new OutputBuffer(maxOutputBytes, keep);
+            stdout.drainFrom(process.getInputStream(), "exec-stdout-" + process.pid());
+            stderr.drainFrom(process.getErrorStream(), "exec-stderr-" + process.pid());
+
+            boolean timedOut = false;
+            try {
+                if (timeoutMillis > 0 && !process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    timedOut = true;
+                    ProcessTrees.destroyForcibly(process);
+                }
+                process.waitFor();
+                long drainDeadline = System.currentTimeMillis() + DRAIN_GRACE_MILLIS;
+                if (!stdout.awaitClosed(DRAIN_GRACE_MILLIS)
+                        | !stderr.awaitClosed(Math.max(1, drainDeadline - System.currentTimeMillis()))) {
+                    // A detached grandchild still holds the pipes; stop reading instead of waiting for it
+                    process.getInputStream().close();
+                    process.getErrorStream().close();
+                }
+            } catch (InterruptedException e) {
+                // Cancelled by the caller (e.g. the tool call timed out): don't leave the command running
+                ProcessTrees.destroyForcibly(process);
+                Thread.currentThread().interrupt();
+                return notExecuted("cancelled");
             }
-            int exitCode = process.waitFor();
-            if (exitCode == 0) {
-                commandHistory.addToCommandHistory(String.join(" ", command));
-                return output.toString();
-            } else {
-                return "Command not executed successfully, exit code: " + exitCode;
+
+            long duration = System.currentTimeMillis() - startTime;
+            int exitCode = process.exitValue();
+            commandHistory.addToCommandHistory(String.join(" ", command), exitCode, duration);
+            metrics.recordCapturedBytes(stdout.end() + stderr.end());
+            return new ExecutionResult(exitCode, timedOut, duration,
+                    stdout.contents(), stdout.end(), stdout.droppedBytes(),
+                    stderr.contents(), stderr.end(), stderr.droppedBytes());
+        } catch (IOException e) {
+            return notExecuted(e.getMessage());
+        } finally {
+            slot.release();
+        }
+    }
+
+    /**
+     * Starts the stages with {@link ProcessBuilder#startPipeline}, so data between stages moves
+     * through OS pipes and never passes through the JVM. The whole pipeline occupies one scheduler slot.
+     */
+    PipelineResult executePipeline(List<ProcessBuilder> builders, long timeoutMillis, int maxOutputBytes, OutputBuffer.Keep keep) {
+        String description = String.join(" | ", builders.stream().map(builder -> String.join(" ", builder.command())).toList());
+        ProcessScheduler.Slot slot;
+        try {
+            slot = scheduler.acquire(ProcessScheduler.DEFAULT_PRIORITY);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return pipelineNotExecuted(builders, "interrupted while waiting for a free process slot");
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            List<Process> processes = spawn(() -> ProcessBuilder.startPipeline(builders));
+            Process last = processes.getLast();
+            OutputBuffer stdout = new OutputBuffer(maxOutputBytes, keep);
+            stdout.drainFrom(last.getInputStream(), "pipeline-stdout-" + last.pid());
+            List<OutputBuffer> stderrs = new ArrayList<>(processes.size());
+            for (Process process : processes) {
+                OutputBuffer stderr = new OutputBuffer(maxOutputBytes, keep);
+                stderr.drainFrom(process.getErrorStream(), "pipeline-stderr-" + process.pid());
+                stderrs.add(stderr);
             }
-        } catch (Exception e) {
-            return "Command not executed successfully: " + e.getMessage();
+
+            boolean timedOut = false;
+            try {
+                if (timeoutMillis > 0) {
+                    // One deadline for the whole pipeline: an earlier stage may outlive the last one
+                    long deadline = startTime + timeoutMillis;
+                    for (Process process : processes.reversed()) {
+                        if (!process.waitFor(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                            timedOut = true;
+                            processes.forEach(ProcessTrees::destroyForcibly);
+                            break;
+                        }
+                    }
+                }
+                for (Process process : processes) {
+                    process.waitFor();
+                }
+                long drainDeadline = System.currentTimeMillis() + DRAIN_GRACE_MILLIS;
+                boolean drained = stdout.awaitClosed(DRAIN_GRACE_MILLIS);
+                for (OutputBuffer stderr : stderrs) {
+                    drained &= stderr.awaitClosed(Math.max(1, drainDeadline - System.currentTimeMillis()));
+                }
+                if (!drained) {
+                    // A detached grandchild still holds the pipes; stop reading instead of waiting for it
+                    last.getInputStream().close();
+                    for (Process process : processes) {
+                        process.getErrorStream().close();
+                    }
+                }
+            } catch (InterruptedException e) {
+                processes.forEach(ProcessTrees::destroyForcibly);
+                Thread.currentThread().interrupt();
+                return pipelineNotExecuted(builders, "cancelled");
+            }
+
+            long duration = System.currentTimeMillis() - startTime;
+            List<PipelineResult.Stage> stages = new ArrayList<>(processes.size());
+            for (int i = 0; i < processes.size(); i++) {
+                OutputBuffer stderr = stderrs.get(i);
+                stages.add(new PipelineResult.Stage(String.join(" ", builders.get(i).command()), processes.get(i).exitValue(),
+                        stderr.contents(), stderr.end(), stderr.droppedBytes()));
+            }
+            commandHistory.addToCommandHistory(description, last.exitValue(), duration);
+            long captured = stdout.end();
+            for (OutputBuffer stderr : stderrs) {
+                captured += stderr.end();
+            }
+            metrics.recordCapturedBytes(captured);
+            return new PipelineResult(stages, timedOut, duration, stdout.contents(), stdout.end(), stdout.droppedBytes());
+        } catch (IOException e) {
+            return pipelineNotExecuted(builders, e.getMessage());
+        } finally {
+            slot.release();
+        }
+    }
+
+    private <T> T spawn(ProcessStarter<T> starter) throws IOException {
+        long startNanos = System.nanoTime();
+        try {
+            T started = starter.start();
+            metrics.recordSpawn(System.nanoTime() - startNanos);
+            return started;
+        } catch (IOException e) {
+            metrics.recordSpawnFailure();
+            throw e;
+        }
+    }
+
+    private interface ProcessStarter<T> {
+        T start() throws IOException;
+    }
+
+    private static PipelineResult pipelineNotExecuted(List<ProcessBuilder> builders, String reason) {
+        // Report the reason against the first stage, the others simply did not run
+        List<PipelineResult.Stage> stages = new ArrayList<>(builders.size());
+        for (int i = 0; i < builders.size(); i++) {
+            stages.add(new PipelineResult.Stage(String.join(" ", builders.get(i).command()), null, i == 0 ? reason : "", 0, 0));
+        }
+        return new PipelineResult(stages, false, 0, "", 0, 0);
+    }
+
+    private static ExecutionResult notExecuted(String reason) {
+        return new ExecutionResult(null, false, 0, "", 0, 0, reason, 0, 0);
+    }
+
+    private static OutputBuffer.Keep parseTruncation(String truncation) {
+        try {
+            return OutputBuffer.Keep.valueOf(truncation.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown truncation mode '" + truncation + "', expected 'head' or 'tail'");
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+package me.touchie771.ShellExecution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncProcessManagerTest {
+
+    @Test
+    void stopByTagRequiresATag() throws IOException {
+        AsyncProcessManager manager = manager(5000);
+        try {
+            assertTrue(manager.stopCommandsByTag(null).startsWith("A tag is required"));
+            assertTrue(manager.stopCommandsByTag("  ").startsWith("A tag is required"));
+        } finally {
+            manager.releaseAll();
+        }
+    }
+
+    @Test
+    void stopByTagEscalatesToKill() throws Exception {
+        AsyncProcessManager manager = manager(200);
+        try {
+            // Ignores SIGTERM, and so does its sleep child, so only the escalation can end them
+            String tagged = processId(manager.startCommandAsync(new String[]{"sh", "-c", "trap '' TERM; while :; do sleep 0.1; done"}, null, List.of(" build ")));
+            String untagged = processId(manager.startCommandAsync(new String[]{"sleep", "30"}, null, null));
+
+            String stopping = manager.stopCommandsByTag("build ");
+            assertTrue(stopping.startsWith("Stopping 1 process(es) tagged 'build'"), stopping);
+
+            String waited = manager.waitForCommands(List.of(tagged), 10_000L, null, null);
+            assertTrue(waited.startsWith("Finished: 1 of 1"), waited);
+            // The outcome is recorded once the killed tree is gone, just after the exit above
+            String listed = manager.listBackgroundProcesses(false, "build");
+            for (int i = 0; i < 50 && !listed.contains("Stop: "); i++) {
+                Thread.sleep(100);
+                listed = manager.listBackgroundProcesses(false, "build");
+            }
+            assertTrue(listed.contains("Stop: killed "), listed);
+            assertEquals("Finished: 0 of 1", manager.waitForCommands(List.of(untagged), 0L, null, null).lines().findFirst().orElseThrow());
+            manager.stopCommand(untagged);
+        } finally {
+            manager.releaseAll();
+        }
+    }
+
+    private static AsyncProcessManager manager(long stopGraceMillis) throws IOException {
+        return new AsyncProcessManager(new CommandHistory(100, null), new ProcessScheduler(4, 4, "fifo"), new ServerMetrics(""),
+                4096, 3600, 100, 0, 0, 0, System.getProperty("java.io.tmpdir"), stopGraceMillis, 600);
+    }
+
+    private static String processId(String started) {
+        assertTrue(started.startsWith("Command started"), started);
+        return started.substring(started.lastIndexOf(' ') + 1);
+    }
+}
@@ -0,0 +1,78 @@
+package me.touchie771.ShellExecution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandHistoryTest {
+
+    @Test
+    void ringKeepsNewestEntriesOldestFirst() throws IOException {
+        CommandHistory history = new CommandHistory(3, null);
+        for (int i = 0; i < 5; i++) {
+            history.addToCommandHistory("cmd " + i);
+        }
+
+        assertEquals(List.of("cmd 2", "cmd 3", "cmd 4"), commands(history.getCommandHistory()));
+        Map<String, Object> stats = history.getCommandHistoryStats();
+        assertEquals(3L, stats.get("size"));
+        assertEquals(5L, stats.get("totalAppended"));
+        assertEquals(2L, stats.get("evicted"));
+    }
+
+    @Test
+    void pagesAreNewestFirst() throws IOException {
+        CommandHistory history = new CommandHistory(4, null);
+        for (int i = 0; i < 6; i++) {
+            history.addToCommandHistory("cmd " + i);
+        }
+
+        CommandHistory.HistoryPage first = history.getCommandHistoryPage(0, 3);
+        assertEquals(List.of("cmd 5", "cmd 4", "cmd 3"), commands(first.entries()));
+        assertTrue(first.hasMore());
+
+        CommandHistory.HistoryPage second = history.getCommandHistoryPage(3, 3);
+        assertEquals(List.of("cmd 2"), commands(second.entries()));
+        assertFalse(second.hasMore());
+    }
+
+    @Test
+    void clearHidesEntriesAndRingRefills() throws IOException {
+        CommandHistory history = new CommandHistory(3, null);
+        history.addToCommandHistory("before 1");
+        history.addToCommandHistory("before 2");
+        history.clearCommandHistory();
+
+        assertTrue(history.getCommandHistory().isEmpty());
+        assertEquals(0L, history.getCommandHistoryStats().get("size"));
+
+        for (int i = 0; i < 4; i++) {
+            history.addToCommandHistory("after " + i);
+        }
+        assertEquals(List.of("after 1", "after 2", "after 3"), commands(history.getCommandHistory()));
+        // Cleared entries don't count as evicted, only the one the ring overwrote after the clear
+        assertEquals(1L, history.getCommandHistoryStats().get("evicted"));
+    }
+
+    @Test
+    void searchOnlySeesRetainedEntries() throws IOException {
+        CommandHistory history = new CommandHistory(2, null);
+        history.addToCommandHistory("git status", 0, 5L);
+        history.addToCommandHistory("git push", 1, 5L);
+        history.addToCommandHistory("ls -la", 0, 5L);
+
+        CommandHistory.HistoryPage page = history.searchCommandHistory("git", null, null, null, null, null, null, null);
+        assertEquals(List.of("git push"), commands(page.entries()));
+        assertEquals(List.of("ls -la"), commands(history.searchCommandHistory(null, null, null, null, null, 0, null, null).entries()));
+    }
+
+    private static List<String> commands(List<HistoryEntry> entries) {
+        return entries.stream().map(HistoryEntry::command).toList();
+    }
+}
@@ -0,0 +1,63 @@
+package me.touchie771.ShellExecution;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvironmentToolsTest {
+
+    private static final String PROPERTY = "environment-tools-test.value";
+
+    @Test
+    void diffSeesChangeWithEqualHashCode() {
+        EnvironmentTools tools = new EnvironmentTools(4);
+        System.setProperty(PROPERTY, "Aa");
+        try {
+            long snapshotId = snapshot(tools);
+            // "Aa" and "BB" have the same hash code, so the properties' hash doesn't change either
+            System.setProperty(PROPERTY, "BB");
+
+            EnvironmentTools.PropertyDiff diff = tools.diffSystemProperties(snapshotId);
+            assertEquals(Map.of(PROPERTY, new EnvironmentTools.Change("Aa", "BB")), diff.changed());
+            assertEquals("BB", tools.getAllSystemProperties().get(PROPERTY));
+        } finally {
+            System.clearProperty(PROPERTY);
+        }
+    }
+
+    @Test
+    void diffListsAddedAndRemovedProperties() {
+        EnvironmentTools tools = new EnvironmentTools(4);
+        System.setProperty(PROPERTY, "before");
+        long snapshotId = snapshot(tools);
+        System.clearProperty(PROPERTY);
+        System.setProperty(PROPERTY + ".new", "x");
+        try {
+            EnvironmentTools.PropertyDiff diff = tools.diffSystemProperties(snapshotId);
+            assertEquals(List.of(PROPERTY), diff.removed());
+            assertEquals(Map.of(PROPERTY + ".new", "x"), diff.added());
+            assertTrue(diff.changed().isEmpty());
+        } finally {
+            System.clearProperty(PROPERTY + ".new");
+        }
+    }
+
+    @Test
+    void unchangedPropertiesReuseTheCopy() {
+        EnvironmentTools tools = new EnvironmentTools(4);
+        long snapshotId = snapshot(tools);
+        EnvironmentTools.PropertyDiff diff = tools.diffSystemProperties(snapshotId);
+        assertTrue(diff.added().isEmpty() && diff.removed().isEmpty() && diff.changed().isEmpty());
+        assertSame(tools.getAllSystemProperties(), tools.getAllSystemProperties());
+    }
+
+    private static long snapshot(EnvironmentTools tools) {
+        String result = tools.snapshotSystemProperties();
+        return Long.parseLong(result.substring(result.lastIndexOf(' ') + 1));
+    }
+}
@@ -0,0 +1,78 @@
+package me.touchie771.ShellExecution;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HistoryIndexTest {
+
+    @Test
+    void overwritingASlotEvictsTheOldPostings() {
+        HistoryIndex index = new HistoryIndex(2);
+        index.add(entry(0, "git status", 0));
+        index.add(entry(1, "git push", 1));
+        index.add(entry(2, "ls -la", 0));
+
+        assertArrayEquals(new long[]{1}, index.withToken("git"));
+        assertArrayEquals(new long[0], index.withToken("status"));
+        assertArrayEquals(new long[]{2}, index.withExitCode(0));
+        assertArrayEquals(new long[]{1}, index.withExitCode(1));
+    }
+
+    @Test
+    void staleEntryIndexedLateIsIgnored() {
+        HistoryIndex index = new HistoryIndex(2);
+        index.add(entry(3, "make build", 0));
+        // Sequence 1 shares the slot but was overwritten by 3 before it got indexed
+        index.add(entry(1, "make clean", 2));
+
+        assertArrayEquals(new long[]{3}, index.withToken("make"));
+        assertArrayEquals(new long[0], index.withToken("clean"));
+        assertArrayEquals(new long[0], index.withExitCode(2));
+    }
+
+    @Test
+    void outOfOrderAddsStaySorted() {
+        HistoryIndex index = new HistoryIndex(8);
+        index.add(entry(2, "echo b", null));
+        index.add(entry(0, "echo a", null));
+        index.add(entry(1, "echo c", null));
+
+        assertArrayEquals(new long[]{0, 1, 2}, index.withToken("echo"));
+    }
+
+    @Test
+    void postingsSurviveLongEvictionRuns() {
+        HistoryIndex index = new HistoryIndex(3);
+        for (long sequence = 0; sequence < 1000; sequence++) {
+            index.add(entry(sequence, "run " + (sequence % 2 == 0 ? "even" : "odd"), (int) (sequence % 2)));
+        }
+
+        assertArrayEquals(new long[]{997, 998, 999}, index.withToken("run"));
+        assertArrayEquals(new long[]{998}, index.withToken("even"));
+        assertArrayEquals(new long[]{997, 999}, index.withExitCode(1));
+    }
+
+    @Test
+    void tokenPrefixMergesPostingLists() {
+        HistoryIndex index = new HistoryIndex(4);
+        index.add(entry(0, "gradle build", 0));
+        index.add(entry(1, "git log", 0));
+        index.add(entry(2, "gradle test", 0));
+
+        assertArrayEquals(new long[]{0, 1, 2}, index.withTokenPrefix("g"));
+        assertArrayEquals(new long[]{0, 2}, index.withTokenPrefix("gra"));
+    }
+
+    @Test
+    void tokenizeSplitsOnNonTokenCharacters() {
+        String[] tokens = HistoryIndex.tokenize("ls -la /tmp/a.txt && ls");
+        assertArrayEquals(new String[]{"ls", "-la", "tmp", "a.txt"}, tokens);
+        assertEquals(0, HistoryIndex.tokenize("  && | ").length);
+    }
+
+    private static HistoryEntry entry(long sequence, String command, Integer exitCode) {
+        return new HistoryEntry(sequence, command, 0, exitCode, null);
+    }
+}
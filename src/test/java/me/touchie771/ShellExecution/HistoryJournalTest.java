@@ -0,0 +1,193 @@
+package me.touchie771.ShellExecution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistoryJournalTest {
+
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void entriesSurviveReopen() throws IOException {
+        try (HistoryJournal journal = new HistoryJournal(directory, SEGMENT_BYTES, 4)) {
+            journal.append(entry("ls -la", 0, 12L));
+            journal.append(entry("sleep 1", null, null));
+        }
+        try (HistoryJournal journal = new HistoryJournal(directory, SEGMENT_BYTES, 4)) {
+            List<HistoryEntry> entries = journal.readTail(10);
+            assertEquals(List.of("ls -la", "sleep 1"), commands(entries));
+            assertEquals(0, entries.get(0).exitCode());
+            assertEquals(12L, entries.get(0).durationMillis());
+            assertEquals(null, entries.get(1).exitCode());
+        }
+    }
+
+    @Test
+    void corruptLastRecordIsDroppedAndOverwritten() throws IOException {
+        try (HistoryJournal journal = new HistoryJournal(directory, SEGMENT_BYTES, 4)) {
+            journal.append(entry("first", 0, 1L));
+            journal.append(entry("second", 0, 1L));
+        }
+        Path segment = onlySegment();
+        // Flip the last byte of the last command, as if the crash hit before its page was written
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) (last.get(0) ^ 0x5A)}), channel.size() - 1);
+        }
+
+        try (HistoryJournal journal = new HistoryJournal(directory, SEGMENT_BYTES, 4)) {
+            assertEquals(List.of("first"), commands(journal.readTail(10)));
+            journal.append(entry("third", 0, 1L));
+        }
+        try (HistoryJournal journal = new HistoryJournal(directory, SEGMENT_BYTES, 4)) {
+            assertEquals(List.of("first", "third"), commands(journal.readTail(10)));
+        }
+    }
+
+    @Test
+    void recordWithLengthButNoPayloadIsDropped() throws IOException {
+        try (HistoryJournal journal = new HistoryJournal(directory, SEGMENT_BYTES, 4)) {
+            journal.append(entry("kept", 0, 1L));
+        }
+        Path segment = onlySegment();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer torn = ByteBuffer.allocate(12).putInt(64).putInt(0x12345678).putInt(7).flip();
+            channel.write(torn);
+        }
+
+        try (HistoryJournal journal = new HistoryJournal(directory, SEGMENT_BYTES, 4)) {
+            assertEquals(List.of("kept"), commands(journal.readTail(10)));
+            journal.append(entry("after", 0, 1L));
+        }
+        try (HistoryJournal journal = new HistoryJournal(directory, SEGMENT_BYTES, 4)) {
+            assertEquals(List.of("kept", "after"), commands(journal.readTail(10)));
+        }
+    }
+
+    @Test
+    void rolloverKeepsNewestSegments() throws IOException {
+        try (HistoryJournal journal = new HistoryJournal(directory, 128, 2)) {
+            for (int i = 0; i < 40; i++) {
+                journal.append(entry("command-" + i, 0, 1L));
+            }
+            assertEquals(2, journal.segmentCount());
+            List<String> commands = commands(journal.readTail(1000));
+            assertEquals("command-39", commands.getLast());
+            for (int i = 1; i < commands.size(); i++) {
+                int previous = Integer.parseInt(commands.get(i - 1).substring("command-".length()));
+                assertEquals(previous + 1, Integer.parseInt(commands.get(i).substring("command-".length())));
+            }
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    void flushRunsAlongsideAppendsRolloverAndClose() throws Exception {
+        HistoryJournal journal = new HistoryJournal(directory, 256, 4);
+        Thread flusher = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                journal.flush();
+            }
+        });
+        flusher.start();
+        try {
+            for (int i = 0; i < 500; i++) {
+                journal.append(entry("command-" + i, 0, 1L));
+            }
+        } finally {
+            journal.close();
+            flusher.interrupt();
+            flusher.join();
+        }
+        try (HistoryJournal reopened = new HistoryJournal(directory, 256, 4)) {
+            assertEquals("command-499", commands(reopened.readTail(1)).getFirst());
+        }
+    }
+
+    @Test
+    void journalDisablesItselfWhenNoSegmentCanBeOpened() throws IOException {
+        HistoryJournal journal = new HistoryJournal(directory, 128, 2);
+        deleteDirectory();
+        // Fill the tail so the next append needs a new segment in the missing directory
+        assertThrows(UncheckedIOException.class, () -> {
+            for (int i = 0; i < 40; i++) {
+                journal.append(entry("command-" + i, 0, 1L));
+            }
+        });
+        assertDoesNotThrow(() -> journal.append(entry("ignored", 0, 1L)));
+        journal.close();
+    }
+
+    @Test
+    void journalErrorsDoNotFailCommandHistory() throws IOException {
+        CommandHistory history = new CommandHistory(100, new HistoryJournal(directory, 128, 2));
+        deleteDirectory();
+        for (int i = 0; i < 40; i++) {
+            history.addToCommandHistory("command-" + i, 0, 1L);
+        }
+        assertEquals(40, history.getCommandHistory().size());
+        history.closeJournal();
+    }
+
+    @Test
+    void loadFromFileKeepsPersistedHistory() throws IOException {
+        Path journalDirectory = directory.resolve("journal");
+        Path imported = Files.writeString(directory.resolve("imported.txt"), "echo imported\n");
+        CommandHistory history = new CommandHistory(100, new HistoryJournal(journalDirectory, SEGMENT_BYTES, 4));
+        history.addToCommandHistory("echo before");
+        history.loadFromFile(imported.toString());
+        assertEquals(List.of("echo imported"), commands(history.getCommandHistory()));
+        history.closeJournal();
+
+        CommandHistory restarted = new CommandHistory(100, new HistoryJournal(journalDirectory, SEGMENT_BYTES, 4));
+        assertEquals(List.of("echo before", "echo imported"), commands(restarted.getCommandHistory()));
+        restarted.closeJournal();
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.toList();
+            assertEquals(1, segments.size());
+            return segments.getFirst();
+        }
+    }
+
+    private void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+        assertTrue(Files.notExists(directory));
+    }
+
+    private static HistoryEntry entry(String command, Integer exitCode, Long durationMillis) {
+        return new HistoryEntry(-1, command, System.currentTimeMillis(), exitCode, durationMillis);
+    }
+
+    private static List<String> commands(List<HistoryEntry> entries) {
+        return entries.stream().map(HistoryEntry::command).toList();
+    }
+}
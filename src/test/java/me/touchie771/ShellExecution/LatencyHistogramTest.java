@@ -0,0 +1,78 @@
+package me.touchie771.ShellExecution;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0L, histogram.quantileNanos(0.5));
+        assertEquals(0L, histogram.count());
+        assertEquals(0L, histogram.maxNanos());
+    }
+
+    @Test
+    void valuesBelowSixteenAreExact() {
+        for (long value = 0; value < 16; value++) {
+            assertEquals(value, lowerQuantile(value), "value " + value);
+        }
+    }
+
+    @Test
+    void bucketEdgesAroundPowersOfTwo() {
+        // From 16 on each power of two is split into 8 buckets: [16, 17], [18, 19], ..., [30, 31], then [32, 35]
+        assertEquals(17L, lowerQuantile(16));
+        assertEquals(17L, lowerQuantile(17));
+        assertEquals(19L, lowerQuantile(18));
+        assertEquals(31L, lowerQuantile(30));
+        assertEquals(31L, lowerQuantile(31));
+        assertEquals(35L, lowerQuantile(32));
+        assertEquals(35L, lowerQuantile(35));
+        assertEquals(39L, lowerQuantile(36));
+        assertEquals((1L << 20) + (1L << 17) - 1, lowerQuantile(1L << 20));
+    }
+
+    @Test
+    void reportedValuesAreWithinAnEighth() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextLong(1, Long.MAX_VALUE >> 1) >> random.nextInt(60);
+            long reported = lowerQuantile(value);
+            assertTrue(reported >= value && reported - value <= value / 8, value + " reported as " + reported);
+        }
+    }
+
+    @Test
+    void extremesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0L, histogram.quantileNanos(0.5));
+        assertEquals(Long.MAX_VALUE, histogram.quantileNanos(1.0));
+        assertEquals(Long.MAX_VALUE, histogram.maxNanos());
+    }
+
+    @Test
+    void quantileNeverExceedsMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.record(1001);
+        assertEquals(1001L, histogram.quantileNanos(0.99));
+        assertEquals(2001L, histogram.sumNanos());
+    }
+
+    /** Records the value and a much larger one, so the median is the upper bound of the value's bucket. */
+    private static long lowerQuantile(long value) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(value);
+        histogram.record(Long.MAX_VALUE);
+        return histogram.quantileNanos(0.5);
+    }
+}
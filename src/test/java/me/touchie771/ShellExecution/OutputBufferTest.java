@@ -0,0 +1,193 @@
+package me.touchie771.ShellExecution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class OutputBufferTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void ringKeepsLastBytesAcrossWraparound() {
+        OutputBuffer buffer = new OutputBuffer(8);
+        write(buffer, "abcde");
+        write(buffer, "fghij");
+        write(buffer, "kl");
+
+        assertEquals(12L, buffer.end());
+        assertEquals(4L, buffer.start());
+        assertEquals(4L, buffer.droppedBytes());
+        assertEquals("efghijkl", buffer.contents());
+    }
+
+    @Test
+    void writeLargerThanCapacityKeepsItsTail() {
+        OutputBuffer buffer = new OutputBuffer(4);
+        write(buffer, "ab");
+        write(buffer, "0123456789");
+
+        assertEquals(12L, buffer.end());
+        assertEquals("6789", buffer.contents());
+    }
+
+    @Test
+    void readFromOverwrittenCursorReportsSkippedBytes() {
+        OutputBuffer buffer = new OutputBuffer(4);
+        write(buffer, "0123456789");
+
+        OutputBuffer.Chunk chunk = buffer.read(2, 100);
+        assertEquals(6L, chunk.start());
+        assertEquals(10L, chunk.end());
+        assertEquals(4L, chunk.skipped());
+        assertEquals("6789", chunk.text());
+
+        OutputBuffer.Chunk wrapped = buffer.read(7, 2);
+        assertEquals("78", wrapped.text());
+    }
+
+    @Test
+    void headModeKeepsFirstBytes() {
+        OutputBuffer buffer = new OutputBuffer(5, OutputBuffer.Keep.HEAD);
+        write(buffer, "abc");
+        write(buffer, "defgh");
+        write(buffer, "ijk");
+
+        assertEquals(11L, buffer.end());
+        assertEquals(0L, buffer.start());
+        assertEquals(6L, buffer.droppedBytes());
+        assertEquals("abcde", buffer.contents());
+    }
+
+    @Test
+    void readStopsBeforeCutMultiByteCharacter() {
+        OutputBuffer buffer = new OutputBuffer(64);
+        write(buffer, "aéb€c");
+
+        // "a" + first byte of "é": the cut character is left for the next read
+        OutputBuffer.Chunk first = buffer.read(0, 2);
+        assertEquals("a", first.text());
+        OutputBuffer.Chunk second = buffer.read(first.end(), 5);
+        assertEquals("éb", second.text());
+        assertEquals("€c", buffer.read(second.end(), 10).text());
+    }
+
+    @Test
+    void finalReadReturnsIncompleteCharacterAsIs() {
+        OutputBuffer buffer = new OutputBuffer(64);
+        byte[] euro = "€".getBytes(StandardCharsets.UTF_8);
+        buffer.write(euro, 0, 2);
+
+        // Nothing more is retained, so the partial bytes are returned rather than stalling the reader
+        assertEquals(2, buffer.read(0, 10).bytes().length);
+    }
+
+    @Test
+    void growsUpToCapacityWithoutLosingData() {
+        OutputBuffer buffer = new OutputBuffer(20_000);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5_000; i++) {
+            String line = Integer.toString(i % 10);
+            expected.append(line);
+            write(buffer, line);
+        }
+        assertEquals(expected.toString(), buffer.contents());
+
+        for (int i = 0; i < 30_000; i++) {
+            String line = Integer.toString(i % 7);
+            expected.append(line);
+            write(buffer, line);
+        }
+        assertEquals(20_000, buffer.capacity());
+        assertEquals(expected.substring(expected.length() - 20_000), buffer.contents());
+    }
+
+    @Test
+    void spillStartsAtThresholdWithWholeStream() throws IOException {
+        OutputBuffer buffer = new OutputBuffer(8, OutputBuffer.Keep.TAIL, spill(4, 100, 1000));
+        write(buffer, "abc");
+        assertNull(buffer.spillFile());
+
+        write(buffer, "d");
+        write(buffer, "efghijklmn");
+        buffer.close();
+        assertEquals(14L, buffer.spilledBytes());
+        assertEquals("abcdefghijklmn", Files.readString(buffer.spillFile()));
+        assertEquals("ghijklmn", buffer.contents());
+    }
+
+    @Test
+    void thresholdAboveCapacityIsLowered() throws IOException {
+        OutputBuffer buffer = new OutputBuffer(4, OutputBuffer.Keep.TAIL, spill(100, 100, 1000));
+        write(buffer, "0123456789");
+        buffer.close();
+        assertEquals("0123456789", Files.readString(buffer.spillFile()));
+    }
+
+    @Test
+    void spillStopsAtMaxBytes() throws IOException {
+        OutputBuffer buffer = new OutputBuffer(4, OutputBuffer.Keep.TAIL, spill(4, 6, 1000));
+        write(buffer, "0123");
+        write(buffer, "456789");
+        buffer.close();
+        assertEquals(6L, buffer.spilledBytes());
+        assertEquals("012345", Files.readString(buffer.spillFile()));
+    }
+
+    @Test
+    void spillFilesShareTheBudget() throws IOException {
+        AtomicLong budget = new AtomicLong(40);
+        OutputBuffer.Spill spill = new OutputBuffer.Spill(directory, 16, 32, budget);
+        OutputBuffer first = new OutputBuffer(16, OutputBuffer.Keep.TAIL, spill);
+        OutputBuffer second = new OutputBuffer(16, OutputBuffer.Keep.TAIL, spill);
+        write(first, "x".repeat(50));
+        write(second, "y".repeat(50));
+
+        assertEquals(32L, first.spilledBytes());
+        assertEquals(8L, second.spilledBytes());
+        assertEquals(0L, budget.get());
+
+        // Out of budget, the second file keeps its prefix and spills nothing more
+        write(second, "z".repeat(10));
+        assertEquals(8L, second.spilledBytes());
+
+        Path firstFile = first.spillFile();
+        first.discardSpill();
+        assertFalse(Files.exists(firstFile));
+        assertEquals(32L, budget.get());
+    }
+
+    @Test
+    void exhaustedBudgetCreatesNoFile() {
+        OutputBuffer buffer = new OutputBuffer(4, OutputBuffer.Keep.TAIL, new OutputBuffer.Spill(directory, 4, 100, new AtomicLong()));
+        write(buffer, "0123456789");
+        assertNull(buffer.spillFile());
+        assertEquals("6789", buffer.contents());
+    }
+
+    @Test
+    void headModeNeverSpills() {
+        OutputBuffer buffer = new OutputBuffer(4, OutputBuffer.Keep.HEAD, spill(1, 100, 1000));
+        write(buffer, "0123456789");
+        assertNull(buffer.spillFile());
+    }
+
+    private OutputBuffer.Spill spill(long threshold, long maxBytes, long budget) {
+        return new OutputBuffer.Spill(directory, threshold, maxBytes, new AtomicLong(budget));
+    }
+
+    private static void write(OutputBuffer buffer, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        buffer.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,133 @@
+package me.touchie771.ShellExecution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutputScannerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void grepReportsMatchesWithContext() throws IOException {
+        OutputBuffer buffer = new OutputBuffer(1024);
+        write(buffer, "one\ntwo\nerror: a\nthree\nfour\nfive\nerror: b\n");
+
+        StringBuilder out = new StringBuilder();
+        int matches = OutputScanner.grep(buffer, Pattern.compile("error"), 1, 100, out);
+        assertEquals(2, matches);
+        assertEquals("2-two\n3:error: a\n4-three\n--\n6-five\n7:error: b\n", out.toString());
+    }
+
+    @Test
+    void grepUsesRegexAndStopsAtMaxMatches() throws IOException {
+        OutputBuffer buffer = new OutputBuffer(1024);
+        write(buffer, "a1\r\nb2\r\na3\r\na4");
+
+        StringBuilder out = new StringBuilder();
+        assertEquals(2, OutputScanner.grep(buffer, Pattern.compile("^a\\d$"), 0, 2, out));
+        assertEquals("1:a1\n3:a3\n", out.toString());
+    }
+
+    @Test
+    void grepRestartsLineNumbersAfterDroppedOutput() throws IOException {
+        OutputBuffer buffer = new OutputBuffer(8);
+        write(buffer, "xxxxxx\nab\nab\n");
+
+        StringBuilder out = new StringBuilder();
+        OutputScanner.grep(buffer, Pattern.compile("ab"), 0, 10, out);
+        // The retained part starts mid-line, so that fragment is line 1
+        assertEquals("[5 bytes not retained; line numbers restart]\n2:ab\n3:ab\n", out.toString());
+    }
+
+    @Test
+    void grepCoversSpilledOutputAcrossTheGap() throws IOException {
+        OutputBuffer buffer = new OutputBuffer(16, OutputBuffer.Keep.TAIL, new OutputBuffer.Spill(directory, 16, 16, new AtomicLong(1000)));
+        write(buffer, "first match\n");
+        write(buffer, "filler line\n".repeat(10));
+        write(buffer, "last match\n");
+
+        StringBuilder out = new StringBuilder();
+        assertEquals(2, OutputScanner.grep(buffer, Pattern.compile("match"), 0, 10, out));
+        assertTrue(out.toString().startsWith("1:first match\n["), out.toString());
+        assertTrue(out.toString().endsWith("bytes not retained; line numbers restart]\n2:last match\n"), out.toString());
+    }
+
+    @Test
+    void grepStopsAtCharacterBudget() throws IOException {
+        OutputBuffer buffer = new OutputBuffer(16 << 20);
+        String line = "match " + "x".repeat(1993) + "\n";
+        write(buffer, line.repeat(3000));
+
+        StringBuilder out = new StringBuilder();
+        int matches = OutputScanner.grep(buffer, Pattern.compile("match"), 0, 10_000, out);
+        assertTrue(matches < 3000, "matches " + matches);
+        assertTrue(out.length() < OutputScanner.MAX_GREP_CHARS + 2 * line.length(), "length " + out.length());
+        assertTrue(out.toString().endsWith("[output truncated after " + OutputScanner.MAX_GREP_CHARS + " characters]\n"));
+    }
+
+    @Test
+    void tailReturnsLastLines() throws IOException {
+        OutputBuffer buffer = new OutputBuffer(1024);
+        write(buffer, "1\n2\n3\n4\n");
+
+        assertEquals("3\n4\n", tail(buffer, 2));
+        assertEquals("1\n2\n3\n4\n", tail(buffer, 10));
+    }
+
+    @Test
+    void tailReportsDroppedOutput() throws IOException {
+        OutputBuffer buffer = new OutputBuffer(6);
+        write(buffer, "1\n2\n3\n4\n");
+
+        assertEquals("[2 earlier bytes not retained]\n2\n3\n4\n", tail(buffer, 10));
+    }
+
+    @Test
+    void tailSpansSpillFileAndGap() throws IOException {
+        OutputBuffer buffer = new OutputBuffer(4, OutputBuffer.Keep.TAIL, new OutputBuffer.Spill(directory, 4, 4, new AtomicLong(1000)));
+        write(buffer, "a\nb\nc\nd\ne\n");
+
+        assertEquals("a\nb\n\n[2 bytes not retained]\nd\ne\n", tail(buffer, 10));
+        // Where the line before "d" starts was lost in the gap
+        assertEquals("[2 bytes not retained]\nd\ne\n", tail(buffer, 2));
+    }
+
+    @Test
+    void tailLimitInsideGapStartsAtRetainedOutput() throws IOException {
+        int megabyte = 1 << 20;
+        OutputBuffer buffer = new OutputBuffer(megabyte, OutputBuffer.Keep.TAIL,
+                new OutputBuffer.Spill(directory, megabyte, megabyte, new AtomicLong(Long.MAX_VALUE)));
+        byte[] line = "x".repeat(1023).concat("\n").getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 6 * 1024; i++) {
+            buffer.write(line, 0, line.length);
+        }
+
+        // The file holds the first MiB, memory the last; the 4 MiB limit falls between the two
+        String tail = tail(buffer, Integer.MAX_VALUE);
+        String expectedHeader = "[output truncated to the last " + OutputScanner.MAX_TAIL_BYTES + " bytes]\n"
+                + "[" + 3 * megabyte + " bytes not retained]\n";
+        assertTrue(tail.startsWith(expectedHeader), tail.substring(0, 200));
+        assertEquals(expectedHeader.length() + megabyte, tail.length());
+    }
+
+    private static String tail(OutputBuffer buffer, int lines) throws IOException {
+        StringBuilder out = new StringBuilder();
+        OutputScanner.tail(buffer, lines, out);
+        return out.toString();
+    }
+
+    private static void write(OutputBuffer buffer, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        buffer.write(bytes, 0, bytes.length);
+    }
+}
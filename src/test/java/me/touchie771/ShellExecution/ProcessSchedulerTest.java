@@ -0,0 +1,102 @@
+package me.touchie771.ShellExecution;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcessSchedulerTest {
+
+    @Test
+    void queuesBeyondLimitAndGrantsInFifoOrder() {
+        ProcessScheduler scheduler = new ProcessScheduler(1, 1, "fifo");
+        ProcessScheduler.Ticket first = scheduler.submitBackground(0);
+        ProcessScheduler.Ticket second = scheduler.submitBackground(5);
+        ProcessScheduler.Ticket third = scheduler.submitBackground(0);
+
+        assertTrue(first.slot().isDone());
+        assertFalse(second.slot().isDone());
+        assertEquals(1, third.position());
+
+        first.slot().join().release();
+        assertTrue(second.slot().isDone());
+        assertFalse(third.slot().isDone());
+    }
+
+    @Test
+    void priorityPolicyServesHigherPriorityFirst() {
+        ProcessScheduler scheduler = new ProcessScheduler(1, 1, "priority");
+        ProcessScheduler.Ticket running = scheduler.submitBackground(0);
+        ProcessScheduler.Ticket low = scheduler.submitBackground(1);
+        ProcessScheduler.Ticket high = scheduler.submitBackground(9);
+
+        assertEquals(0, high.position());
+        assertEquals(1, low.position());
+        running.slot().join().release();
+        assertTrue(high.slot().isDone());
+        assertFalse(low.slot().isDone());
+    }
+
+    @Test
+    void releasingTwiceFreesOneSlot() {
+        ProcessScheduler scheduler = new ProcessScheduler(1, 1, "fifo");
+        ProcessScheduler.Slot slot = scheduler.submitBackground(0).slot().join();
+        ProcessScheduler.Ticket next = scheduler.submitBackground(0);
+        ProcessScheduler.Ticket last = scheduler.submitBackground(0);
+        slot.release();
+        slot.release();
+        assertTrue(next.slot().isDone());
+        assertFalse(last.slot().isDone());
+        assertEquals(1, background(scheduler).get("running"));
+        assertEquals(0, stats(scheduler).get("running"));
+    }
+
+    @Test
+    void cancelledTicketNeverGetsASlot() {
+        ProcessScheduler scheduler = new ProcessScheduler(1, 1, "fifo");
+        ProcessScheduler.Ticket running = scheduler.submitBackground(0);
+        ProcessScheduler.Ticket cancelled = scheduler.submitBackground(0);
+
+        assertTrue(cancelled.cancel());
+        assertTrue(cancelled.slot().isCancelled());
+        running.slot().join().release();
+        assertFalse(running.cancel());
+        assertEquals(1L, background(scheduler).get("cancelled"));
+        assertEquals(0, background(scheduler).get("running"));
+    }
+
+    @Test
+    void backgroundJobsDoNotBlockSynchronousCalls() throws Exception {
+        ProcessScheduler scheduler = new ProcessScheduler(1, 2, "fifo");
+        List<ProcessScheduler.Ticket> background = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            background.add(scheduler.submitBackground(0));
+        }
+        assertFalse(background.get(2).slot().isDone());
+
+        CompletableFuture<ProcessScheduler.Slot> foreground = CompletableFuture.supplyAsync(() -> {
+            try {
+                return scheduler.acquire(0);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        foreground.get(5, TimeUnit.SECONDS).release();
+    }
+
+    private static Map<String, Object> stats(ProcessScheduler scheduler) {
+        return scheduler.getSchedulerStats();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> background(ProcessScheduler scheduler) {
+        return (Map<String, Object>) scheduler.getSchedulerStats().get("background");
+    }
+}
@@ -0,0 +1,64 @@
+package me.touchie771.ShellExecution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ResultCacheTest {
+
+    private static final String[] COMMAND = {"uname", "-a"};
+
+    @Test
+    void hitsAreReportedAndSkipTheRun() throws IOException {
+        ResultCache cache = new ResultCache(true, "uname", 60, 16, "", false, 0);
+        AtomicInteger runs = new AtomicInteger();
+        List<ExecutionResult> hits = new ArrayList<>();
+
+        ExecutionResult first = cache.get(COMMAND, 1024, OutputBuffer.Keep.TAIL, () -> run(runs, 0), hits::add);
+        ExecutionResult second = cache.get(COMMAND, 1024, OutputBuffer.Keep.TAIL, () -> run(runs, 0), hits::add);
+
+        assertEquals(1, runs.get());
+        assertSame(first, second);
+        assertEquals(List.of(first), hits);
+    }
+
+    @Test
+    void failedResultsAreNotCached() throws IOException {
+        ResultCache cache = new ResultCache(true, "uname", 60, 16, "", false, 0);
+        AtomicInteger runs = new AtomicInteger();
+        List<ExecutionResult> hits = new ArrayList<>();
+
+        cache.get(COMMAND, 1024, OutputBuffer.Keep.TAIL, () -> run(runs, 1), hits::add);
+        cache.get(COMMAND, 1024, OutputBuffer.Keep.TAIL, () -> run(runs, 1), hits::add);
+
+        assertEquals(2, runs.get());
+        assertEquals(0, hits.size());
+        assertEquals(0, cache.getCacheStats().get("entries"));
+    }
+
+    @Test
+    void commandsOutsideTheAllowlistAlwaysRun() throws IOException {
+        ResultCache cache = new ResultCache(true, "uname", 60, 16, "", false, 0);
+        AtomicInteger runs = new AtomicInteger();
+        String[] command = {"date"};
+
+        cache.get(command, 1024, OutputBuffer.Keep.TAIL, () -> run(runs, 0), hit -> {
+        });
+        cache.get(command, 1024, OutputBuffer.Keep.TAIL, () -> run(runs, 0), hit -> {
+        });
+
+        assertEquals(2, runs.get());
+        assertEquals(2L, cache.getCacheStats().get("bypassed"));
+    }
+
+    private static ExecutionResult run(AtomicInteger runs, int exitCode) {
+        runs.incrementAndGet();
+        return new ExecutionResult(exitCode, false, 1, "out", 3, 0, "", 0, 0);
+    }
+}
@@ -0,0 +1,93 @@
+package me.touchie771.ShellExecution;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShellSessionsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void stateCarriesOverBetweenCommands() throws IOException {
+        ShellSessions sessions = sessions(4);
+        String sessionId = open(sessions, null);
+        try {
+            assertEquals(0, sessions.sessionExec(sessionId, "X=hello; cd /", 5000L, null).exitCode());
+            SessionResult result = sessions.sessionExec(sessionId, "echo $X; pwd; false", 5000L, null);
+            assertEquals(1, result.exitCode());
+            assertEquals("hello\n/\n", result.output());
+        } finally {
+            sessions.closeAll();
+        }
+    }
+
+    @Test
+    void outputAfterSentinelIsKeptForNextCommand() throws IOException {
+        // Holds the shell's output back, so the sentinel and the background job's line arrive in one read
+        Path shell = directory.resolve("delayed-sh");
+        Files.writeString(shell, "#!/bin/sh\nsh | { sleep 1; cat; }\n");
+        Files.setPosixFilePermissions(shell, PosixFilePermissions.fromString("rwx------"));
+        ShellSessions sessions = sessions(4);
+        String sessionId = open(sessions, shell.toString());
+        try {
+            SessionResult first = sessions.sessionExec(sessionId, "(sleep 0.3; echo late) & echo now", 10_000L, null);
+            assertEquals(0, first.exitCode());
+            assertFalse(first.timedOut());
+            assertEquals("now\n", first.output());
+
+            SessionResult second = sessions.sessionExec(sessionId, "echo next", 10_000L, null);
+            assertEquals(0, second.exitCode());
+            assertEquals("late\nnext\n", second.output());
+        } finally {
+            sessions.closeAll();
+        }
+    }
+
+    @Test
+    void sessionLimitCountsOpenSessions() throws IOException {
+        ShellSessions sessions = sessions(1);
+        String sessionId = open(sessions, null);
+        try {
+            assertTrue(sessions.openSession(null, null).startsWith("Too many open sessions"));
+            sessions.closeSession(sessionId);
+            sessionId = open(sessions, null);
+        } finally {
+            sessions.closeAll();
+        }
+    }
+
+    @Test
+    void outputIsLimitedToLastBytes() throws IOException {
+        ShellSessions sessions = sessions(4);
+        String sessionId = open(sessions, null);
+        try {
+            SessionResult result = sessions.sessionExec(sessionId, "printf 0123456789", 5000L, 4);
+            assertEquals(0, result.exitCode());
+            assertEquals("6789", result.output());
+            assertEquals(6L, result.outputDropped());
+        } finally {
+            sessions.closeAll();
+        }
+    }
+
+    private static ShellSessions sessions(int maxSessions) throws IOException {
+        return new ShellSessions(new CommandHistory(100, null), new ProcessScheduler(4, 0, "fifo"),
+                "/bin/sh", maxSessions, 900, 0, 1 << 20, 1 << 24);
+    }
+
+    private static String open(ShellSessions sessions, String shell) {
+        String opened = sessions.openSession(shell, null);
+        assertTrue(opened.startsWith("Session opened"), opened);
+        return opened.substring(opened.lastIndexOf(' ') + 1);
+    }
+}